@@ -1,122 +1,295 @@
 package ch.epfl.imhof;
 
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Set;
 
 /**
- * A map of attributes that links the key (ex "name") to the value (ex "Geneva")
+ * A map of attributes that links the key (ex "name") to the value (ex "Geneva").
+ * The keys and values are stored as codes of a StringDictionary, in an array of pairs
+ * sorted by the code of their key, and the attributes built by a Builder are shared
+ * between all the entities having the same attributes and the same dictionary, usually
+ * the entities of a same file. A key or a value can be null
  *
  * @author Michal Piotr Pleskowicz (251034)
  * @author Rafael Ulises Luzius Pizarro Solar (250976)
  */
 
 public final class Attributes {
-	
-	private final Map<String, String> attributes;
-	
+
+	private final StringDictionary dictionary;
+	private final int[] attributes;
+	private final int hashCode;
+	private volatile KeptAttributes lastKept;
+
 	/**
 	 * Creates an instance of Attributes using a map of attributes passed as a parameter
 	 * @param attributes
 	 * 			A map of attributes that links a name(String) to a value(String)
 	 */
 	public Attributes(Map<String, String> attributes){
-		this.attributes = Collections.unmodifiableMap(new HashMap<String,String>(attributes));
+		this(builder(attributes));
+	}
+
+	private Attributes(Builder builder){
+		this(builder.dictionary, builder.pairs());
+	}
+
+	/**
+	 * Creates an instance of Attributes using an array of pairs of codes sorted by key
+	 * @param dictionary
+	 * 			The dictionary of the codes
+	 * @param attributes
+	 * 			The codes of the keys and values, alternated
+	 */
+	private Attributes(StringDictionary dictionary, int[] attributes){
+		this.dictionary = dictionary;
+		this.attributes = attributes;
+		/*
+		 * The hash code of a map, which doesn't depend on the codes, so that equal attributes of different dictionaries have the same one
+		 */
+		int hash = 0;
+		for(int i=0; i<attributes.length; i+=2) hash += Objects.hashCode(dictionary.string(attributes[i]))^Objects.hashCode(dictionary.string(attributes[i+1]));
+		this.hashCode = hash;
 	}
-	
+
 	/**
 	 * Checks whether this object's map of attributes is empty
-	 * @return 
+	 * @return
 	 * 			True if this object's map of attributes is empty, false otherwise
 	 */
-	public boolean isEmpty() { return attributes.isEmpty();}
-	
+	public boolean isEmpty() { return attributes.length==0;}
+
 	/**
 	 * Checks whether the map of attributes contains a given key
 	 * @param key
-	 * 			A key to be checked if it's in the map of attributes 
-	 * @return 
+	 * 			A key to be checked if it's in the map of attributes
+	 * @return
 	 * 			True if the map of attributes contains the given key, false otherwise
 	 */
-	public boolean contains(String key) { return attributes.containsKey(key);}
-	
+	public boolean contains(String key) { return indexOf(key)>=0;}
+
 	/**
 	 * Gives a value assigned to a given key
 	 * @param key
 	 * 			Key which value will be returned
-	 * @return 
+	 * @return
 	 * 			The value assigned to a given key
 	 */
-	public String get(String key){ return attributes.get(key);}
-	
+	public String get(String key){
+		int index = indexOf(key);
+		return index<0 ? null : dictionary.string(attributes[index+1]);
+	}
+
 	/**
 	 * Gives a value assigned to a given key or a default value in case the key doesn't exist
-	 * @param key 
+	 * @param key
 	 * 			A key which value will be checked and maybe returned
 	 * @param defaultValue
 	 * 			A value which will be returned if the key doesn't exist
-	 * @return 
+	 * @return
 	 * 			A value assigned to a given key or a default value in case the key doesn't exist
 	 */
-	public String get(String key, String defaultValue){	return attributes.getOrDefault(key, defaultValue);}
-	
+	public String get(String key, String defaultValue){
+		int index = indexOf(key);
+		return index<0 ? defaultValue : dictionary.string(attributes[index+1]);
+	}
+
 	/**
 	 * Gives an integer value assigned to a given key or a default value in case the key doesn't exist
-	 * @param key 
+	 * @param key
 	 * 			A key whose value will be checked and maybe returned
 	 * @param defaultValue
 	 * 			A value which will be returned if the key doesn't exist
-	 * @return 
+	 * @return
 	 * 			An integer value assigned to a given key or a default value in case the key doesn't exist
 	 */
 	public int get(String key, int defaultValue){
 		try{
-			Integer.parseInt(attributes.get(key));
+			return Integer.parseInt(get(key));
 		} catch(NumberFormatException e) {
 			return defaultValue;
 		}
-		return Integer.parseInt(attributes.get(key));
     }
-	
+
 	/**
-	 * Creates an instance of Attributes from a current instance leaving only attributes whose keys are in a given set of keys to keep
+	 * Gives the keys of this object's map of attributes
+	 * @return
+	 * 			An unmodifiable set of the keys of the map of attributes
+	 */
+	public Set<String> keySet(){
+		return new AbstractSet<String>(){
+			@Override
+			public Iterator<String> iterator(){
+				return new Iterator<String>(){
+					private int index = 0;
+
+					@Override
+					public boolean hasNext(){ return index<attributes.length; }
+
+					@Override
+					public String next(){
+						if(!hasNext()) throw new NoSuchElementException();
+						String key = dictionary.string(attributes[index]);
+						index += 2;
+						return key;
+					}
+				};
+			}
+
+			@Override
+			public int size(){ return attributes.length/2; }
+
+			@Override
+			public boolean contains(Object key){ return key instanceof String && Attributes.this.contains((String) key); }
+		};
+	}
+
+	/**
+	 * Creates an instance of Attributes from a current instance leaving only attributes whose keys are in a given set of keys to keep.
+	 * The result for the last set of keys is remembered, so that the entities sharing these attributes compute it once:
+	 * the set is recognized by its identity, so it must not change once given
 	 * @param keysToKeep
-	 * 			A set of keys that will be kept from current map of attributes
-	 * @return 
+	 * 			A set of keys that will be kept from current map of attributes, which must not be modified afterwards
+	 * @return
 	 * 			A new instance of Attributes that only contains attributes whose keys are in a given list of keys to keep
 	 */
 	public Attributes keepOnlyKeys(Set<String> keysToKeep){
-		Attributes.Builder building = new Attributes.Builder();
-		for(String element : keysToKeep){ 
-			if(this.contains(element)){
-				building.put(element, attributes.get(element));
+		KeptAttributes kept = lastKept;
+		if(kept!=null && kept.keysToKeep==keysToKeep) return kept.attributes;
+		int[] keptPairs = new int[attributes.length];
+		int count = 0;
+		for(int i=0; i<attributes.length; i+=2){
+			if(keysToKeep.contains(dictionary.string(attributes[i]))){
+				keptPairs[count++] = attributes[i];
+				keptPairs[count++] = attributes[i+1];
 			}
 		}
-		return building.build();
+		Attributes result = dictionary.share(count==attributes.length ? this : new Attributes(dictionary, Arrays.copyOf(keptPairs, count)));
+		lastKept = new KeptAttributes(keysToKeep, result);
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object that){
+		if(!(that instanceof Attributes)) return false;
+		Attributes other = (Attributes) that;
+		if(dictionary==other.dictionary) return Arrays.equals(attributes, other.attributes);
+		if(hashCode!=other.hashCode || attributes.length!=other.attributes.length) return false;
+		for(int i=0; i<attributes.length; i+=2){
+			String key = dictionary.string(attributes[i]);
+			int index = other.indexOf(key);
+			if(index<0 || !Objects.equals(dictionary.string(attributes[i+1]), other.dictionary.string(other.attributes[index+1]))) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode(){ return hashCode; }
+
+	/**
+	 * Gives the index of the code of a key in the array of pairs
+	 */
+	private int indexOf(String key){
+		int code = dictionary.codeOf(key);
+		if(code==StringDictionary.ABSENT) return -1;
+		for(int i=0; i<attributes.length; i+=2){
+			if(attributes[i]==code) return i;
+			if(attributes[i]>code) return -1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Gives a builder of attributes having the pairs of a map
+	 */
+	private static Builder builder(Map<String, String> attributes){
+		Builder builder = new Builder();
+		for(Map.Entry<String, String> attribute : attributes.entrySet()) builder.put(attribute.getKey(), attribute.getValue());
+		return builder;
 	}
-	
-	
+
+	/**
+	 * Starts a new dictionary for the keys and values of the attributes built from now on. A reader of
+	 * a file calls it before building the attributes of the file, so that the keys and values of the
+	 * attributes of the files read before are freed with the last attributes using them
+	 */
+	public static void newDictionary(){ StringDictionary.renew(); }
+
+	/**
+	 * Remembers the attributes kept for a set of keys
+	 */
+	private static final class KeptAttributes{
+		private final Set<String> keysToKeep;
+		private final Attributes attributes;
+
+		KeptAttributes(Set<String> keysToKeep, Attributes attributes){
+			this.keysToKeep = keysToKeep;
+			this.attributes = attributes;
+		}
+	}
+
 	public final static class Builder{
-		
-		private Map<String, String> mapBuilder = new HashMap<String,String>();
-		
+
+		private final StringDictionary dictionary = StringDictionary.current();
+		private int[] keys = new int[4];
+		private int[] values = new int[4];
+		private int size;
+
 		/**
 		 * Puts a given pair of key and value in a map of String and String. It will reassign the value if the given
 		 * @param key
-		 * 			A key that will be put in a map
+		 * 			A key that will be put in a map, which can be null
 		 * @param value
-		 * 			A value that will be assigned to a key
+		 * 			A value that will be assigned to a key, which can be null
 		 */
 		public void put(String key, String value){
-			mapBuilder.put(key, value);
+			int keyCode = dictionary.intern(key);
+			int valueCode = dictionary.intern(value);
+			for(int i=0; i<size; i++){
+				if(keys[i]==keyCode){
+					values[i] = valueCode;
+					return;
+				}
+			}
+			if(size==keys.length){
+				keys = Arrays.copyOf(keys, size*2);
+				values = Arrays.copyOf(values, size*2);
+			}
+			keys[size] = keyCode;
+			values[size++] = valueCode;
 		}
-		
+
 		/**
 		 * Builds a new instance of Attributes
-		 * @return 
-		 * 			A new instance of Attributes built from a map of String and String
+		 * @return
+		 * 			An instance of Attributes, shared with the other entities having the same attributes
 		 */
-		public Attributes build(){ return new Attributes(mapBuilder); }
+		public Attributes build(){ return dictionary.share(new Attributes(this)); }
+
+		/**
+		 * Gives the pairs of codes put so far, sorted by key
+		 */
+		private int[] pairs(){
+			int[] pairs = new int[2*size];
+			for(int i=0; i<size; i++){
+				/*
+				 * Insertion sort, the number of attributes of an entity being small
+				 */
+				int j = i;
+				while(j>0 && pairs[2*j-2]>keys[i]){
+					pairs[2*j] = pairs[2*j-2];
+					pairs[2*j+1] = pairs[2*j-1];
+					j--;
+				}
+				pairs[2*j] = keys[i];
+				pairs[2*j+1] = values[i];
+			}
+			return pairs;
+		}
 	}
 }
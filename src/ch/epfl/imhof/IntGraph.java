@@ -0,0 +1,231 @@
+package ch.epfl.imhof;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An undirected graph whose nodes are the integers from 0 to the number of nodes, stored in
+ * compressed sparse rows: the neighbors of all the nodes follow each other in a single array,
+ * the neighbors of a node starting at its offset. The neighbors of a node are given in the
+ * order their edges were added. The sets of Graph are available as views, without copy
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+public final class IntGraph {
+
+	private final int[] offsets;
+	private final int[] neighbors;
+
+	/**
+	 * Creates a graph from its compressed sparse rows
+	 * @param offsets
+	 * 			The offset of the neighbors of each node, followed by the total number of neighbors
+	 * @param neighbors
+	 * 			The neighbors of all the nodes
+	 */
+	private IntGraph(int[] offsets, int[] neighbors){
+		this.offsets = offsets;
+		this.neighbors = neighbors;
+	}
+
+	/**
+	 * Gives the number of nodes of this graph
+	 * @return
+	 * 			The number of nodes, the nodes being the integers from 0 to this number excluded
+	 */
+	public int nodeCount(){ return offsets.length-1; }
+
+	/**
+	 * Gives the number of neighbors of a node
+	 * @param node
+	 * 			A node of the graph
+	 * @return
+	 * 			The number of neighbors of the node
+	 * @throws IndexOutOfBoundsException
+	 * 			When the graph doesn't contain the node
+	 */
+	public int degree(int node){
+		checkNode(node);
+		return offsets[node+1]-offsets[node];
+	}
+
+	/**
+	 * Gives a neighbor of a node
+	 * @param node
+	 * 			A node of the graph
+	 * @param i
+	 * 			The position of the neighbor, between 0 and the degree of the node excluded
+	 * @return
+	 * 			The neighbor of the node at the given position
+	 * @throws IndexOutOfBoundsException
+	 * 			When the graph doesn't contain the node or the position is not valid
+	 */
+	public int neighbor(int node, int i){
+		if(i<0 || i>=degree(node)) throw new IndexOutOfBoundsException();
+		return neighbors[offsets[node]+i];
+	}
+
+	/**
+	 * Gives a view of the nodes of this graph, as Graph.nodes
+	 * @return
+	 * 			An unmodifiable set of the nodes of this graph
+	 */
+	public Set<Integer> nodes(){
+		return new RangeSet(0, nodeCount(), null);
+	}
+
+	/**
+	 * Gives a view of the neighbors of a node, as Graph.neighborsOf
+	 * @param node
+	 * 			A node of the graph
+	 * @return
+	 * 			An unmodifiable set of the neighbors of the node
+	 * @throws IllegalArgumentException
+	 * 			When the graph doesn't contain the node
+	 */
+	public Set<Integer> neighborsOf(int node) throws IllegalArgumentException{
+		if(node<0 || node>=nodeCount()) throw new IllegalArgumentException();
+		return new RangeSet(offsets[node], offsets[node+1], neighbors);
+	}
+
+	private void checkNode(int node){
+		if(node<0 || node>=nodeCount()) throw new IndexOutOfBoundsException();
+	}
+
+	/**
+	 * A view of a range of integers, or of a range of an array of distinct integers
+	 */
+	private static final class RangeSet extends AbstractSet<Integer> {
+
+		private final int from, to;
+		private final int[] values;
+
+		RangeSet(int from, int to, int[] values){
+			this.from = from;
+			this.to = to;
+			this.values = values;
+		}
+
+		@Override
+		public Iterator<Integer> iterator(){
+			return new Iterator<Integer>(){
+				private int i = from;
+
+				@Override
+				public boolean hasNext(){ return i<to; }
+
+				@Override
+				public Integer next(){
+					if(!hasNext()) throw new NoSuchElementException();
+					return values==null ? i++ : values[i++];
+				}
+			};
+		}
+
+		@Override
+		public int size(){ return to-from; }
+
+		@Override
+		public boolean contains(Object o){
+			if(!(o instanceof Integer)) return false;
+			int value = (Integer) o;
+			if(values==null) return value>=from && value<to;
+			for(int i=from; i<to; i++){
+				if(values[i]==value) return true;
+			}
+			return false;
+		}
+	}
+
+	public final static class Builder{
+
+		private int nodeCount;
+		private int[] edges = new int[32];
+		private int edgesCount;
+
+		/**
+		 * Creates a builder of a graph with no nodes
+		 */
+		public Builder(){
+			this(0);
+		}
+
+		/**
+		 * Creates a builder of a graph with a given number of nodes
+		 * @param nodeCount
+		 * 			The number of nodes, the nodes being the integers from 0 to this number excluded
+		 * @throws IllegalArgumentException
+		 * 			When the number of nodes is negative
+		 */
+		public Builder(int nodeCount) throws IllegalArgumentException{
+			if(nodeCount<0) throw new IllegalArgumentException();
+			this.nodeCount = nodeCount;
+		}
+
+		/**
+		 * Adds a new node to the graph
+		 * @return
+		 * 			The new node, the integer following the last node of the graph
+		 */
+		public int addNode(){ return nodeCount++; }
+
+		/**
+		 * Adds an edge between two given nodes, an edge added twice being kept once
+		 * @param n1
+		 * 			First node of the edge
+		 * @param n2
+		 * 			Second node of the edge
+		 * @throws IllegalArgumentException
+		 * 			When at least one node is not contained in the graph
+		 */
+		public void addEdge(int n1, int n2) throws IllegalArgumentException{
+			if(n1<0 || n1>=nodeCount || n2<0 || n2>=nodeCount) throw new IllegalArgumentException();
+			if(edgesCount+2>edges.length) edges = Arrays.copyOf(edges, edges.length*2);
+			edges[edgesCount++] = n1;
+			edges[edgesCount++] = n2;
+		}
+
+		/**
+		 * Builds the compressed sparse rows of the graph
+		 * @return
+		 * 			The graph with the edges added so far
+		 */
+		public IntGraph build(){
+			int[] offsets = new int[nodeCount+1];
+			for(int e=0; e<edgesCount; e+=2){
+				offsets[edges[e]+1]++;
+				if(edges[e]!=edges[e+1]) offsets[edges[e+1]+1]++;
+			}
+			for(int n=0; n<nodeCount; n++) offsets[n+1] += offsets[n];
+			int[] neighbors = new int[offsets[nodeCount]];
+			int[] ends = Arrays.copyOf(offsets, nodeCount);
+			for(int e=0; e<edgesCount; e+=2){
+				neighbors[ends[edges[e]]++] = edges[e+1];
+				if(edges[e]!=edges[e+1]) neighbors[ends[edges[e+1]]++] = edges[e];
+			}
+
+			/*
+			 * Removes the repeated neighbors, keeping the first one, each neighbor being marked by the node it was last met for
+			 */
+			int[] marks = new int[nodeCount];
+			int count = 0;
+			int start = 0;
+			for(int n=0; n<nodeCount; n++){
+				int end = offsets[n+1];
+				offsets[n] = count;
+				for(int i=start; i<end; i++){
+					if(marks[neighbors[i]]==n+1) continue;
+					marks[neighbors[i]] = n+1;
+					neighbors[count++] = neighbors[i];
+				}
+				start = end;
+			}
+			offsets[nodeCount] = count;
+			return new IntGraph(offsets, count==neighbors.length ? neighbors : Arrays.copyOf(neighbors, count));
+		}
+	}
+}
@@ -8,7 +8,10 @@ import javax.imageio.ImageIO;
 import ch.epfl.imhof.dem.Earth;
 import ch.epfl.imhof.dem.HGTDigitalElevationModel;
 import ch.epfl.imhof.dem.ReliefShader;
+import ch.epfl.imhof.geometry.FixedPointEncoding;
+import ch.epfl.imhof.geometry.Simplifier;
 import ch.epfl.imhof.osm.OSMMap;
+import ch.epfl.imhof.osm.OSMMapCache;
 import ch.epfl.imhof.osm.OSMMapReader;
 import ch.epfl.imhof.osm.OSMToGeoTransformer;
 import ch.epfl.imhof.painting.Color;
@@ -22,6 +25,9 @@ public class Main {
 	
 	private static Projection projection =  new CH1903Projection();
     private static Vector3 sunDirection = new Vector3(-1, 1, 1);
+    private static final double MAP_MARGIN = 200;
+    private static final double POINT_RESOLUTION = 0.001;
+    private static final double SIMPLIFICATION_PIXELS = 0.5;
 
 	
 	public static void main(String[]  args) throws Exception{
@@ -33,6 +39,7 @@ public class Main {
 		double latitudeTR = Math.toRadians(Double.parseDouble(args[4])); double longitudeTR = Math.toRadians(Double.parseDouble(args[5]));
 		int dpi= Integer.parseInt(args[6]); 
 		String nameImagePNG = args[7];		
+		boolean streaming = args.length>8 && args[8].equals("stream");
 		
 		
 		
@@ -61,10 +68,28 @@ public class Main {
 		/*
 		 * Creation of the Map
 		 */
-		OSMMap OSMMap = OSMMapReader.readOSMFile(osmFile, true);
-        OSMToGeoTransformer Transformer = new OSMToGeoTransformer(new CH1903Projection());
+		OSMMapReader.Options.Builder optionsBuilder = new OSMMapReader.Options.Builder();
+		optionsBuilder.setBackend(OSMMapReader.Backend.TOKENIZER);
+		optionsBuilder.setColumnarNodes(true);
+		optionsBuilder.setPipelinedInflation(true);
+		optionsBuilder.setClipWays(true);
+		optionsBuilder.setKeptKeys(OSMToGeoTransformer.attributeKeys());
+		optionsBuilder.setFixedPointCoordinates(true);
+        Painter painter = SwissPainter.painter();
+        OSMToGeoTransformer Transformer = new OSMToGeoTransformer(new CH1903Projection(), new FixedPointEncoding(POINT_RESOLUTION), painter.polygonScope(), painter.polyLineScope());
         
-        Map map = Transformer.transform(OSMMap);
+        /*
+         * The OSMMap is read through its cache, created when it's missing, and transformed in parallel. When asked for
+         * with a last argument "stream", the file is rather transformed while it's read, so that the OSMMap and the Map
+         * are never in memory together, at the cost of parsing the file every time
+         */
+        Map map;
+        if(streaming){
+        	map = OSMMapReader.readMap(osmFile, true, pointBL, pointTR, MAP_MARGIN, optionsBuilder.build(), Transformer);
+        } else {
+        	OSMMap OSMMap = OSMMapCache.readOSMFile(osmFile, true, osmFile+".cache", pointBL, pointTR, MAP_MARGIN, optionsBuilder.build());
+        	map = Transformer.transform(OSMMap, true);
+        }
         
         /*
          * Creation of the Canvas
@@ -72,10 +97,15 @@ public class Main {
         
         Java2DCanvas canvas = new Java2DCanvas(projection.project(pointBL), projection.project(pointTR), width, height, dpi, Color.WHITE);
         
+        /*
+         * Simplification of the Map, the points closer than half a pixel of the canvas to the simplified lines not being drawn
+         */
+        Simplifier simplifier = new Simplifier(SIMPLIFICATION_PIXELS*canvas.pixelSize());
+        map = map.transformed(simplifier::simplify, simplifier::simplify);
+        
         /*
          * Drawing the map with Swiss Painter
          */
-        Painter painter = SwissPainter.painter();
 	    painter.drawMap(map, canvas);
 
 	    BufferedImage mapImage = canvas.image();
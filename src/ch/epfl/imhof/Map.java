@@ -3,7 +3,9 @@ package ch.epfl.imhof;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.function.Function;
 
+import ch.epfl.imhof.geometry.BoundingBox;
 import ch.epfl.imhof.geometry.PolyLine;
 import ch.epfl.imhof.geometry.Polygon;
 
@@ -17,6 +19,7 @@ public final class Map {
 	
 	private final List<Attributed<PolyLine>> polyLines;
 	private final List<Attributed<Polygon>> polygons;
+	private BoundingBox boundingBox;
 	
 	/**
 	 * Constructs a map using attributed lists of polyLines and polygons
@@ -44,6 +47,67 @@ public final class Map {
 	 */
 	public List<Attributed<Polygon>> polygons(){ return polygons; }
 	
+	/**
+	 * Gives the bounding box of the polyLines and polygons of a map, computed the first time it's asked for
+	 * @return
+	 * 			The smallest bounding box containing the polyLines and polygons of the map, or null when the map is empty
+	 */
+	public BoundingBox boundingBox(){
+		/*
+		 * A bounding box is immutable, so a map shared between threads at worst computes it more than once
+		 */
+		BoundingBox box = boundingBox;
+		if(box==null){
+			for(Attributed<PolyLine> polyLine : polyLines) box = box==null ? polyLine.value().boundingBox() : box.union(polyLine.value().boundingBox());
+			for(Attributed<Polygon> polygon : polygons) box = box==null ? polygon.value().boundingBox() : box.union(polygon.value().boundingBox());
+			boundingBox = box;
+		}
+		return box;
+	}
+	
+	/**
+	 * Gives the part of a map which can be seen in an area: its polyLines and polygons whose bounding box intersects the area
+	 * @param area
+	 * 			The area the map is seen in
+	 * @return
+	 * 			A map of the polyLines and polygons whose bounding box intersects the area, in the same order,
+	 * 			or this map when it's entirely inside the area
+	 */
+	public Map within(BoundingBox area){
+		BoundingBox box = boundingBox();
+		if(box==null || area.contains(box)) return this;
+		List<Attributed<PolyLine>> visiblePolyLines = new ArrayList<Attributed<PolyLine>>();
+		for(Attributed<PolyLine> polyLine : polyLines){
+			if(area.intersects(polyLine.value().boundingBox())) visiblePolyLines.add(polyLine);
+		}
+		List<Attributed<Polygon>> visiblePolygons = new ArrayList<Attributed<Polygon>>();
+		for(Attributed<Polygon> polygon : polygons){
+			if(area.intersects(polygon.value().boundingBox())) visiblePolygons.add(polygon);
+		}
+		return new Map(visiblePolyLines, visiblePolygons);
+	}
+	
+	/**
+	 * Creates a map whose polyLines and polygons are the ones of this map transformed, with the same attributes, in the same order
+	 * @param polyLineTransformation
+	 * 			The transformation of the polyLines
+	 * @param polygonTransformation
+	 * 			The transformation of the polygons
+	 * @return
+	 * 			A new map of the transformed polyLines and polygons
+	 */
+	public Map transformed(Function<PolyLine, PolyLine> polyLineTransformation, Function<Polygon, Polygon> polygonTransformation){
+		List<Attributed<PolyLine>> newPolyLines = new ArrayList<Attributed<PolyLine>>(polyLines.size());
+		for(Attributed<PolyLine> polyLine : polyLines){
+			newPolyLines.add(new Attributed<PolyLine>(polyLineTransformation.apply(polyLine.value()), polyLine.attributes()));
+		}
+		List<Attributed<Polygon>> newPolygons = new ArrayList<Attributed<Polygon>>(polygons.size());
+		for(Attributed<Polygon> polygon : polygons){
+			newPolygons.add(new Attributed<Polygon>(polygonTransformation.apply(polygon.value()), polygon.attributes()));
+		}
+		return new Map(newPolyLines, newPolygons);
+	}
+	
 	public static class Builder{
 		
 		private List<Attributed<PolyLine>> polyLines = new ArrayList<Attributed<PolyLine>>();
@@ -0,0 +1,129 @@
+package ch.epfl.imhof;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A dictionary of the keys and values of attributes, giving each distinct String a code so
+ * that the attributes can be stored as arrays of integers and each String is kept once. The
+ * attributes built with a dictionary are shared through it, and keep it alive: a dictionary is
+ * freed with the last attributes using it. A new dictionary is started for each reading of a
+ * file, so that the Strings of the maps no longer used aren't kept
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+final class StringDictionary {
+
+	/**
+	 * The code of null, which can be a key or a value like any String
+	 */
+	static final int NULL = -1;
+	/**
+	 * The code given for a String which isn't in the dictionary
+	 */
+	static final int ABSENT = -2;
+
+	private static volatile WeakReference<StringDictionary> current = new WeakReference<StringDictionary>(null);
+
+	private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<String, Integer>();
+	private final ConcurrentHashMap<Attributes, Attributes> sharedAttributes = new ConcurrentHashMap<Attributes, Attributes>();
+	private volatile String[] strings = new String[1024];
+	private int size;
+
+	/**
+	 * Creates an empty dictionary of Strings
+	 */
+	private StringDictionary() {}
+
+	/**
+	 * Gives the dictionary used by the attributes built from now on, created when no attributes use the last one
+	 * @return
+	 * 			The current dictionary
+	 */
+	static StringDictionary current(){
+		StringDictionary dictionary = current.get();
+		if(dictionary!=null) return dictionary;
+		synchronized(StringDictionary.class){
+			dictionary = current.get();
+			if(dictionary==null) dictionary = renew();
+			return dictionary;
+		}
+	}
+
+	/**
+	 * Starts a new dictionary for the attributes built from now on, the attributes built before keeping theirs
+	 * @return
+	 * 			The new current dictionary
+	 */
+	static synchronized StringDictionary renew(){
+		StringDictionary dictionary = new StringDictionary();
+		current = new WeakReference<StringDictionary>(dictionary);
+		return dictionary;
+	}
+
+	/**
+	 * Gives the code of a String, adding it to the dictionary if needed
+	 * @param string
+	 * 			A String, or null
+	 * @return
+	 * 			The code of the String
+	 */
+	int intern(String string){
+		if(string==null) return NULL;
+		Integer code = codes.get(string);
+		return code!=null ? code : add(string);
+	}
+
+	/**
+	 * Gives the code of a String, without adding it to the dictionary
+	 * @param string
+	 * 			A String, or null
+	 * @return
+	 * 			The code of the String, or ABSENT if the String isn't in the dictionary
+	 */
+	int codeOf(String string){
+		if(string==null) return NULL;
+		Integer code = codes.get(string);
+		return code!=null ? code : ABSENT;
+	}
+
+	/**
+	 * Gives the String having a given code
+	 * @param code
+	 * 			The code of a String in the dictionary
+	 * @return
+	 * 			The String having the code
+	 */
+	String string(int code){
+		if(code==NULL) return null;
+		String[] s = strings;
+		if(code<s.length && s[code]!=null) return s[code];
+		/*
+		 * The code may have been given by another thread before the array was published to this one
+		 */
+		synchronized(this){ return strings[code]; }
+	}
+
+	/**
+	 * Gives the shared instance of Attributes equal to given attributes built with this dictionary
+	 * @param attributes
+	 * 			Attributes built with this dictionary
+	 * @return
+	 * 			The attributes equal to the given ones shared by the entities using this dictionary
+	 */
+	Attributes share(Attributes attributes){
+		Attributes shared = sharedAttributes.putIfAbsent(attributes, attributes);
+		return shared==null ? attributes : shared;
+	}
+
+	private synchronized int add(String string){
+		Integer code = codes.get(string);
+		if(code!=null) return code;
+		if(size==strings.length) strings = Arrays.copyOf(strings, size*2);
+		strings[size] = string;
+		codes.put(string, size);
+		return size++;
+	}
+}
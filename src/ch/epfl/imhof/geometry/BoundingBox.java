@@ -0,0 +1,141 @@
+package ch.epfl.imhof.geometry;
+
+import java.util.List;
+
+/**
+ * An axis-aligned rectangle, given by its smallest and largest coordinates, containing its border
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+
+public final class BoundingBox {
+
+    private final double minX, minY, maxX, maxY;
+
+    /**
+     * Creates a bounding box from its smallest and largest coordinates
+     * @param minX
+     * 			The smallest coordinate x
+     * @param minY
+     * 			The smallest coordinate y
+     * @param maxX
+     * 			The largest coordinate x
+     * @param maxY
+     * 			The largest coordinate y
+     * @throws IllegalArgumentException
+     * 			When a smallest coordinate is larger than the largest one
+     */
+    public BoundingBox(double minX, double minY, double maxX, double maxY){
+        if(!(minX<=maxX && minY<=maxY)) throw new IllegalArgumentException();
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Creates the smallest bounding box containing given points
+     * @param points
+     * 			A non-empty list of points
+     * @return
+     * 			The bounding box of the points
+     * @throws IllegalArgumentException
+     * 			When the list of points is empty
+     */
+    public static BoundingBox of(List<Point> points){
+        if(points.isEmpty()) throw new IllegalArgumentException();
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for(Point point : points){
+            minX = Math.min(minX, point.x());
+            minY = Math.min(minY, point.y());
+            maxX = Math.max(maxX, point.x());
+            maxY = Math.max(maxY, point.y());
+        }
+        return new BoundingBox(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Gives the smallest coordinate x of the bounding box
+     * @return
+     * 			The smallest coordinate x
+     */
+    public double minX(){ return minX; }
+
+    /**
+     * Gives the smallest coordinate y of the bounding box
+     * @return
+     * 			The smallest coordinate y
+     */
+    public double minY(){ return minY; }
+
+    /**
+     * Gives the largest coordinate x of the bounding box
+     * @return
+     * 			The largest coordinate x
+     */
+    public double maxX(){ return maxX; }
+
+    /**
+     * Gives the largest coordinate y of the bounding box
+     * @return
+     * 			The largest coordinate y
+     */
+    public double maxY(){ return maxY; }
+
+    /**
+     * Checks whether a point is inside the bounding box or on its border
+     * @param p
+     * 			The point to be checked
+     * @return
+     * 			True when the point is in the bounding box, false otherwise
+     */
+    public boolean contains(Point p){ return contains(p.x(), p.y()); }
+
+    /**
+     * Checks whether a point given by its coordinates is inside the bounding box or on its border
+     * @param x
+     * 			The coordinate x of the point
+     * @param y
+     * 			The coordinate y of the point
+     * @return
+     * 			True when the point is in the bounding box, false otherwise
+     */
+    public boolean contains(double x, double y){
+        return x>=minX && x<=maxX && y>=minY && y<=maxY;
+    }
+
+    /**
+     * Checks whether another bounding box is entirely inside this one
+     * @param that
+     * 			The bounding box to be checked
+     * @return
+     * 			True when the other bounding box is inside this one, false otherwise
+     */
+    public boolean contains(BoundingBox that){
+        return that.minX>=minX && that.maxX<=maxX && that.minY>=minY && that.maxY<=maxY;
+    }
+
+    /**
+     * Checks whether another bounding box shares at least a point with this one
+     * @param that
+     * 			The bounding box to be checked
+     * @return
+     * 			True when the bounding boxes intersect, false otherwise
+     */
+    public boolean intersects(BoundingBox that){
+        return that.minX<=maxX && that.maxX>=minX && that.minY<=maxY && that.maxY>=minY;
+    }
+
+    /**
+     * Gives the smallest bounding box containing this one and another one
+     * @param that
+     * 			Another bounding box
+     * @return
+     * 			The union of the two bounding boxes
+     */
+    public BoundingBox union(BoundingBox that){
+        return new BoundingBox(Math.min(minX, that.minX), Math.min(minY, that.minY), Math.max(maxX, that.maxX), Math.max(maxY, that.maxY));
+    }
+}
@@ -11,6 +11,11 @@ import java.util.List;
 
 public final class ClosedPolyLine extends PolyLine {
 	
+    /**
+     * The signed area, NaN until it's computed. It's volatile so that it's seen complete by the threads sharing a polyLine
+     */
+    private volatile double signedArea = Double.NaN;
+	
     /**
      * Creates a closed polyLine using a list of points
      * @param points
@@ -20,6 +25,30 @@ public final class ClosedPolyLine extends PolyLine {
         super(points);
     }
     
+    /**
+     * Creates a closed polyLine using a list of points, stored with a given encoding
+     * @param points
+     * 			List of points used to create a closed polyLine
+     * @param encoding
+     * 			The encoding of the points, or null to store the points as they are
+     */
+    ClosedPolyLine(List<Point> points, FixedPointEncoding encoding) {
+        super(points, encoding);
+    }
+
+    /**
+     * Creates a closed polyLine using the coordinates of its points, stored with a given encoding
+     * @param coordinates
+     * 			The coordinates x and y of the points, alternated
+     * @param count
+     * 			The number of points
+     * @param encoding
+     * 			The encoding of the points, or null to store the points as they are
+     */
+    ClosedPolyLine(double[] coordinates, int count, FixedPointEncoding encoding) {
+        super(coordinates, count, encoding);
+    }
+    
     /**
      * Checks whether a polyLine is closed
      * @return
@@ -30,21 +59,41 @@ public final class ClosedPolyLine extends PolyLine {
     }
     
     /**
-     * Gives an area created by a closed polyLine
+     * Gives an area created by a closed polyLine, computed the first time it's asked for
      * @return
      * 			Area created by a close polyLine
      */
     public double area(){
-        double area=0;
-        int j;
-        for (int i = 0; i < points().size(); i++) {
-            j=(i+1)%points().size();
-            area+=points().get(i).x()*points().get(j).y()-points().get(j).x()*points().get(i).y();
+        return Math.abs(signedArea());
+    }
+    
+    /**
+     * Gives the signed area of a closed polyLine, computed the first time it's asked for
+     * @return
+     * 			The area created by a closed polyLine, positive when its points turn counterclockwise
+     * 			and negative when they turn clockwise
+     */
+    public double signedArea(){
+        double area = signedArea;
+        if(Double.isNaN(area)){
+            double[] c = ringCoordinates();
+            int last = c.length-2;
+            area = 0;
+            for(int i=0; i<last; i+=2) area += c[i]*c[i+3]-c[i+2]*c[i+1];
+            area += c[last]*c[1]-c[0]*c[last+1];
+            area = area/2;
+            signedArea = area;
         }
-        area=Math.abs(area/2);
         return area;
     }
     
+    /**
+     * Checks whether the points of a closed polyLine turn counterclockwise
+     * @return
+     * 			True when the signed area is positive, false otherwise
+     */
+    public boolean isCounterClockwise(){ return signedArea()>0; }
+    
     /**
      * Checks whether a given point is contained in a polygon created by a closed polyLine
      * @param p
@@ -53,29 +102,32 @@ public final class ClosedPolyLine extends PolyLine {
      * 			True if the given Point is in the polygon created by a closed polyLine, false otherwise.
      */
     public boolean containsPoint(Point p){
+        if(!boundingBox().contains(p)) return false;
         
-        double indice=0;
-        int j;
-        for (int i = 0; i < points().size(); i++) 
-        {
-            j=(i+1)%points().size();
-            if (points().get(i).y() <= p.y()) 
-            {
-                if (points().get(j).y()> p.y() && 
-(points().get(i).x() - p.x())*(points().get(j).y() - p.y()) 
-> (points().get(j).x() -p.x())*(points().get(i).y() -p.y())) 
-                {
-                    indice+=1;
-                }
-                
-            } 
-            else if (points().get(j).y() <= p.y() &&
-(points().get(i).x() - p.x())*(points().get(j).y() - p.y()) 
-<= (points().get(j).x() -p.x())*(points().get(i).y() -p.y())) 
-            {
-                indice-=1;                            
-            }      
+        /*
+         * Counts the winding number over the edges from each point to the next one, the last edge closing the ring.
+         * The loop has no branch, each edge adding its upward and removing its downward crossing of the point
+         */
+        double px = p.x(), py = p.y();
+        double[] c = ringCoordinates();
+        int winding = 0;
+        double xi = c[c.length-2]-px, yi = c[c.length-1]-py;
+        for (int j = 0; j < c.length; j+=2) {
+            double xj = c[j]-px, yj = c[j+1]-py;
+            double left = xi*yj, right = xj*yi;
+            winding += ((yi<=0 & yj>0 & left>right) ? 1 : 0) - ((yi>0 & yj<=0 & left<=right) ? 1 : 0);
+            xi = xj;
+            yi = yj;
         }
-        return (indice != 0);
+        return winding != 0;
+    }
+    
+    /**
+     * Gives the packed coordinates of the points, or a copy of them decoded for the caller when the points are encoded,
+     * which isn't kept so that an encoded ring takes no more memory once it's been measured
+     */
+    private double[] ringCoordinates(){
+        double[] c = packedCoordinates();
+        return c!=null ? c : coordinates();
     }
-}    
\ No newline at end of file
+}
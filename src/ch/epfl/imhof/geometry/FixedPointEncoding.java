@@ -0,0 +1,117 @@
+package ch.epfl.imhof.geometry;
+
+import java.util.List;
+
+/**
+ * An encoding of the points of a polyLine as 32 bits integers, counting a fixed resolution
+ * from the first point of the polyLine. A point then takes 8 bytes instead of a Point object,
+ * the Points being created again only when the polyLine is drawn.
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+
+public final class FixedPointEncoding {
+
+    private final double resolution;
+
+    /**
+     * Creates an encoding with a given resolution
+     * @param resolution
+     * 			The smallest difference between two coordinates, in the unit of the points (meters for a projection)
+     * @throws IllegalArgumentException
+     * 			When the resolution is not strictly positive
+     */
+    public FixedPointEncoding(double resolution){
+        if(!(resolution>0)) throw new IllegalArgumentException();
+        this.resolution = resolution;
+    }
+
+    /**
+     * Gives the resolution of the encoding
+     * @return
+     * 			The smallest difference between two coordinates
+     */
+    public double resolution(){ return resolution; }
+
+    /**
+     * Encodes a list of points, the coordinates being rounded to the resolution
+     * @param points
+     * 			The points to be encoded
+     * @return
+     * 			The encoded points, stored as numbers of resolutions from the first one, or null when
+     * 			a point is too far from the first one to be encoded on 32 bits
+     */
+    PointArray encode(List<Point> points){
+        double[] coordinates = new double[2*points.size()];
+        for(int i=0; i<points.size(); i++){
+            coordinates[2*i] = points.get(i).x();
+            coordinates[2*i+1] = points.get(i).y();
+        }
+        return encode(coordinates, points.size());
+    }
+
+    /**
+     * Encodes points given by their coordinates, the coordinates being rounded to the resolution
+     * @param coordinates
+     * 			The coordinates x and y of the points, alternated
+     * @param count
+     * 			The number of points
+     * @return
+     * 			The encoded points, stored as numbers of resolutions from the first one, or null when
+     * 			a point is too far from the first one to be encoded on 32 bits
+     */
+    PointArray encode(double[] coordinates, int count){
+        double originX = coordinates[0], originY = coordinates[1];
+        int[] encoded = new int[2*count];
+        for(int i=0; i<count; i++){
+            double x = Math.rint((coordinates[2*i]-originX)/resolution);
+            double y = Math.rint((coordinates[2*i+1]-originY)/resolution);
+            if(Math.abs(x)>Integer.MAX_VALUE || Math.abs(y)>Integer.MAX_VALUE) return null;
+            encoded[2*i] = (int) x;
+            encoded[2*i+1] = (int) y;
+        }
+        return new EncodedPoints(originX, originY, resolution, encoded);
+    }
+
+    /**
+     * Represents the points encoded with a fixed resolution, decoded when they are read
+     */
+    static final class EncodedPoints extends PointArray {
+
+        private final double originX, originY, resolution;
+        private final int[] coordinates;
+
+        EncodedPoints(double originX, double originY, double resolution, int[] coordinates){
+            this.originX = originX;
+            this.originY = originY;
+            this.resolution = resolution;
+            this.coordinates = coordinates;
+        }
+
+        @Override
+        double x(int index){ return originX+coordinates[2*index]*resolution; }
+
+        @Override
+        double y(int index){ return originY+coordinates[2*index+1]*resolution; }
+
+        @Override
+        double[] packed(){ return null; }
+
+        @Override
+        FixedPointEncoding encoding(){ return new FixedPointEncoding(resolution); }
+
+        @Override
+        public int size(){ return coordinates.length/2; }
+
+        @Override
+        double[] coordinates(){
+            double[] decoded = new double[coordinates.length];
+            for(int i=0; i<coordinates.length; i+=2){
+                decoded[i] = originX+coordinates[i]*resolution;
+                decoded[i+1] = originY+coordinates[i+1]*resolution;
+            }
+            return decoded;
+        }
+    }
+}
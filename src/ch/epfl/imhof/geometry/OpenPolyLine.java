@@ -20,6 +20,30 @@ public final class OpenPolyLine extends PolyLine {
         super(points);
     }
     
+    /**
+     * Creates an open polyLine using a list of points, stored with a given encoding
+     * @param points
+     * 			List of points used to create an open polyLine
+     * @param encoding
+     * 			The encoding of the points, or null to store the points as they are
+     */
+    OpenPolyLine(List<Point> points, FixedPointEncoding encoding) {
+        super(points, encoding);
+    }
+
+    /**
+     * Creates an open polyLine using the coordinates of its points, stored with a given encoding
+     * @param coordinates
+     * 			The coordinates x and y of the points, alternated
+     * @param count
+     * 			The number of points
+     * @param encoding
+     * 			The encoding of the points, or null to store the points as they are
+     */
+    OpenPolyLine(double[] coordinates, int count, FixedPointEncoding encoding) {
+        super(coordinates, count, encoding);
+    }
+    
     /**
      * Checks whether a polyLine is closed
      * @return
@@ -0,0 +1,99 @@
+package ch.epfl.imhof.geometry;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * The points of a polyLine stored in a primitive array, seen as a list of points whose Points
+ * are only created when they're asked for. The coordinates can be read without creating any Point
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+
+abstract class PointArray extends AbstractList<Point> implements RandomAccess {
+
+    /**
+     * Gives the coordinate x of a point
+     * @param index
+     * 			The position of the point, which must be valid
+     * @return
+     * 			The coordinate x of the point
+     */
+    abstract double x(int index);
+
+    /**
+     * Gives the coordinate y of a point
+     * @param index
+     * 			The position of the point, which must be valid
+     * @return
+     * 			The coordinate y of the point
+     */
+    abstract double y(int index);
+
+    /**
+     * Gives the array of the coordinates x and y of the points, alternated, when they're stored so
+     * @return
+     * 			The array of the coordinates, which must not be modified, or null when the points are stored otherwise
+     */
+    abstract double[] packed();
+
+    /**
+     * Gives the encoding the points are stored with
+     * @return
+     * 			An encoding having the resolution of the points, or null when they aren't encoded
+     */
+    FixedPointEncoding encoding(){ return null; }
+
+    @Override
+    public Point get(int index){
+        if(index<0 || index>=size()) throw new IndexOutOfBoundsException();
+        return new Point(x(index), y(index));
+    }
+
+    /**
+     * Gives the coordinates of the points in a new array
+     * @return
+     * 			A new array of the coordinates x and y of the points, alternated
+     */
+    double[] coordinates(){
+        double[] coordinates = new double[2*size()];
+        for(int i=0; i<size(); i++){
+            coordinates[2*i] = x(i);
+            coordinates[2*i+1] = y(i);
+        }
+        return coordinates;
+    }
+
+    /**
+     * Points stored as their coordinates, in an array of doubles
+     */
+    static final class Packed extends PointArray {
+
+        private final double[] coordinates;
+
+        /**
+         * Creates the points of a given array of coordinates, which is kept without copy
+         * @param coordinates
+         * 			The coordinates x and y of the points, alternated
+         */
+        Packed(double[] coordinates){
+            this.coordinates = coordinates;
+        }
+
+        @Override
+        double x(int index){ return coordinates[2*index]; }
+
+        @Override
+        double y(int index){ return coordinates[2*index+1]; }
+
+        @Override
+        double[] packed(){ return coordinates; }
+
+        @Override
+        double[] coordinates(){ return coordinates.clone(); }
+
+        @Override
+        public int size(){ return coordinates.length/2; }
+    }
+}
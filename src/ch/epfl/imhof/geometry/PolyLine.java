@@ -2,8 +2,7 @@ package ch.epfl.imhof.geometry;
 
 
 import java.util.List;
-import java.util.Collections;
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * A group of points that are linked in certain order, can be seen as polygon lines.
@@ -13,7 +12,8 @@ import java.util.ArrayList;
  */
 
 public abstract class PolyLine {
-    private final List<Point> pointList;
+    private final PointArray points;
+    private BoundingBox boundingBox;
     
     /**
      * Creates a polyLine using a given list of points
@@ -21,8 +21,55 @@ public abstract class PolyLine {
      * 			List of points used to create a polyLine
      */
     public PolyLine(List<Point> points){
-        if(points.size()==0){ throw new IllegalArgumentException(); } 
-        else { this.pointList = Collections.unmodifiableList(new ArrayList<Point>(points)); }
+        this(points, null);
+    }
+    
+    /**
+     * Creates a polyLine using a given list of points, stored with a given encoding
+     * @param points
+     * 			List of points used to create a polyLine
+     * @param encoding
+     * 			The encoding of the points, or null to store the points as they are
+     */
+    PolyLine(List<Point> points, FixedPointEncoding encoding){
+        this(packed(points), points.size(), encoding, false);
+    }
+    
+    /**
+     * Creates a polyLine using the coordinates of its points, stored with a given encoding
+     * @param coordinates
+     * 			The coordinates x and y of the points, alternated
+     * @param count
+     * 			The number of points
+     * @param encoding
+     * 			The encoding of the points, or null to store the points as they are
+     */
+    PolyLine(double[] coordinates, int count, FixedPointEncoding encoding){
+        this(coordinates, count, encoding, true);
+    }
+    
+    /**
+     * Creates a polyLine storing its points encoded when possible, packed in an array of doubles otherwise
+     * @param copy
+     * 			Boolean stating if the coordinates must be copied, when they belong to the caller
+     */
+    private PolyLine(double[] coordinates, int count, FixedPointEncoding encoding, boolean copy){
+        if(count==0){ throw new IllegalArgumentException(); }
+        PointArray encodedPoints = encoding==null ? null : encoding.encode(coordinates, count);
+        if(encodedPoints==null){
+            encodedPoints = new PointArray.Packed(copy || coordinates.length!=2*count ? Arrays.copyOf(coordinates, 2*count) : coordinates);
+        }
+        this.points = encodedPoints;
+    }
+    
+    private static double[] packed(List<Point> points){
+        double[] coordinates = new double[2*points.size()];
+        int i = 0;
+        for(Point point : points){
+            coordinates[i++] = point.x();
+            coordinates[i++] = point.y();
+        }
+        return coordinates;
     }
     
     /**
@@ -33,42 +80,155 @@ public abstract class PolyLine {
     public abstract boolean isClosed();
     
     /**
-     * Gives a list of points of a polyLine
+     * Gives a list of points of a polyLine, whose Points are created when they're read
      * @return
-     * 			List of points of a polyLine
+     * 			An unmodifiable list of points of a polyLine
      */
-    public List<Point> points() { return pointList;}
+    public List<Point> points() { return points;}
+    
+    /**
+     * Gives the number of points of a polyLine
+     * @return
+     * 			The number of points of a polyLine
+     */
+    public int pointsCount() { return points.size(); }
+    
+    /**
+     * Gives the coordinate x of a point of a polyLine, without creating the Point
+     * @param index
+     * 			The position of the point
+     * @return
+     * 			The coordinate x of the point
+     * @throws IndexOutOfBoundsException
+     * 			When the position is not the one of a point of the polyLine
+     */
+    public double x(int index) { return points.x(checkIndex(index)); }
+    
+    /**
+     * Gives the coordinate y of a point of a polyLine, without creating the Point
+     * @param index
+     * 			The position of the point
+     * @return
+     * 			The coordinate y of the point
+     * @throws IndexOutOfBoundsException
+     * 			When the position is not the one of a point of the polyLine
+     */
+    public double y(int index) { return points.y(checkIndex(index)); }
+    
+    private int checkIndex(int index){
+        if(index<0 || index>=points.size()) throw new IndexOutOfBoundsException();
+        return index;
+    }
     
     /**
      * Gives the first point in a list of points of a polyLine
      * @return
      * 			The first point in a list of points of a polyLine
      */
-    public Point firstPoint()	{ return pointList.get(0); }
+    public Point firstPoint()	{ return points.get(0); }
+    
+    /**
+     * Gives the coordinates of the points of a polyLine packed in an array, without creating the Points
+     * @return
+     * 			A new array of the coordinates x and y of the points, alternated
+     */
+    public double[] coordinates(){ return points.coordinates(); }
+    
+    /**
+     * Gives the array in which the coordinates of the points are stored, without copy
+     * @return
+     * 			The coordinates x and y of the points, alternated, which must not be modified,
+     * 			or null when the points are encoded
+     */
+    double[] packedCoordinates(){ return points.packed(); }
+    
+    /**
+     * Gives the encoding the points are stored with, so that a polyLine derived from this one is stored alike
+     * @return
+     * 			An encoding having the resolution of the points, or null when they're stored as they are
+     */
+    FixedPointEncoding encoding(){ return points.encoding(); }
+    
+    /**
+     * Gives the bounding box of the points of a polyLine, computed the first time it's asked for
+     * @return
+     * 			The smallest bounding box containing the points of a polyLine
+     */
+    public BoundingBox boundingBox(){
+        /*
+         * A bounding box is immutable, so a polyLine shared between threads at worst computes it more than once
+         */
+        BoundingBox box = boundingBox;
+        if(box==null){
+            double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for(int i=0; i<points.size(); i++){
+                minX = Math.min(minX, points.x(i));
+                minY = Math.min(minY, points.y(i));
+                maxX = Math.max(maxX, points.x(i));
+                maxY = Math.max(maxY, points.y(i));
+            }
+            box = new BoundingBox(minX, minY, maxX, maxY);
+            boundingBox = box;
+        }
+        return box;
+    }
  
     public final static class Builder{
-        private List<Point> pointNewList = new ArrayList<Point>();
+        private double[] coordinates = new double[16];
+        private int count;
         
         /**
          * Adds a point to a list of points of a polyLine
          * @param newPoint
          * 			A point to be added to a list of points of a polyLine
          */
-        public void addPoint(Point newPoint) { this.pointNewList.add(newPoint); }
+        public void addPoint(Point newPoint) { addPoint(newPoint.x(), newPoint.y()); }
+        
+        /**
+         * Adds a point given by its coordinates to a list of points of a polyLine, without creating a Point
+         * @param x
+         * 			The coordinate x of the point
+         * @param y
+         * 			The coordinate y of the point
+         */
+        public void addPoint(double x, double y) {
+            if(2*count==coordinates.length) coordinates = Arrays.copyOf(coordinates, 2*coordinates.length);
+            coordinates[2*count] = x;
+            coordinates[2*count+1] = y;
+            count++;
+        }
         
         /**
          * Builds a new open polyLine
          * @return
          * 			A new open polyLine
          */
-        public OpenPolyLine buildOpen()	{ return new OpenPolyLine(pointNewList); }
+        public OpenPolyLine buildOpen()	{ return new OpenPolyLine(coordinates, count, null); }
         
         /**
          * Builds a new closed polyLine
          * @return
          * 			A new closed polyLine
          */
-        public ClosedPolyLine buildClosed()	{ return new ClosedPolyLine(pointNewList); }
+        public ClosedPolyLine buildClosed()	{ return new ClosedPolyLine(coordinates, count, null); }
+        
+        /**
+         * Builds a new open polyLine whose points are stored with a fixed-point encoding
+         * @param encoding
+         * 			The encoding of the points, or null to store the points as they are
+         * @return
+         * 			A new open polyLine
+         */
+        public OpenPolyLine buildOpen(FixedPointEncoding encoding)	{ return new OpenPolyLine(coordinates, count, encoding); }
+        
+        /**
+         * Builds a new closed polyLine whose points are stored with a fixed-point encoding
+         * @param encoding
+         * 			The encoding of the points, or null to store the points as they are
+         * @return
+         * 			A new closed polyLine
+         */
+        public ClosedPolyLine buildClosed(FixedPointEncoding encoding)	{ return new ClosedPolyLine(coordinates, count, encoding); }
     }
 }
-
@@ -52,4 +52,11 @@ public final class Polygon {
      * 			A list of closed polyLines used as holes in a polygon
      */
     public List<ClosedPolyLine> holes(){ return holes; }
+    
+    /**
+     * Gives the bounding box of a polygon, the one of its shell, which contains its holes
+     * @return
+     * 			The smallest bounding box containing the shell of a polygon
+     */
+    public BoundingBox boundingBox(){ return shell.boundingBox(); }
 }
@@ -0,0 +1,166 @@
+package ch.epfl.imhof.geometry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A static R-tree of values having a bounding box, packed with the Sort-Tile-Recursive algorithm:
+ * at each level the boxes are sorted by the x of their center in vertical slices, each slice sorted
+ * by the y of their center, and consecutive boxes are grouped in the nodes of the level above.
+ * A query only visits the nodes whose box contains or intersects what is searched for.
+ * The values found by a query are given in no particular order
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+
+public final class RTree<T> {
+
+    private static final int NODE_CAPACITY = 8;
+
+    /**
+     * The boxes of each level, the values being at level 0 and the roots at the last level
+     */
+    private final List<BoundingBox[]> boxes;
+
+    /**
+     * The position of the first child of each node at the level below, for the levels above 0
+     */
+    private final List<int[]> firstChildren;
+    private final List<T> values;
+
+    private RTree(List<BoundingBox[]> boxes, List<int[]> firstChildren, List<T> values){
+        this.boxes = boxes;
+        this.firstChildren = firstChildren;
+        this.values = values;
+    }
+
+    /**
+     * Gives the number of values in the tree
+     * @return
+     * 			The number of values in the tree
+     */
+    public int size(){ return values.size(); }
+
+    /**
+     * Gives the values whose bounding box contains a point
+     * @param p
+     * 			The point searched for
+     * @return
+     * 			The values whose bounding box contains the point, in no particular order
+     */
+    public List<T> containing(Point p){
+        List<T> found = new ArrayList<T>();
+        int top = boxes.size()-1;
+        for(int i=0; i<boxes.get(top).length; i++) search(top, i, p, null, found);
+        return found;
+    }
+
+    /**
+     * Gives the values whose bounding box intersects another bounding box
+     * @param box
+     * 			The bounding box searched for
+     * @return
+     * 			The values whose bounding box intersects the given one, in no particular order
+     */
+    public List<T> intersecting(BoundingBox box){
+        List<T> found = new ArrayList<T>();
+        int top = boxes.size()-1;
+        for(int i=0; i<boxes.get(top).length; i++) search(top, i, null, box, found);
+        return found;
+    }
+
+    /**
+     * Adds the values below a node matching a point or a box to a list
+     */
+    private void search(int level, int node, Point p, BoundingBox box, List<T> found){
+        BoundingBox nodeBox = boxes.get(level)[node];
+        if(p!=null ? !nodeBox.contains(p) : !nodeBox.intersects(box)) return;
+        if(level==0){
+            found.add(values.get(node));
+            return;
+        }
+        int first = firstChildren.get(level)[node];
+        int last = Math.min(first+NODE_CAPACITY, boxes.get(level-1).length);
+        for(int child=first; child<last; child++) search(level-1, child, p, box, found);
+    }
+
+    public final static class Builder<T>{
+
+        private final List<BoundingBox> boxes = new ArrayList<BoundingBox>();
+        private final List<T> values = new ArrayList<T>();
+
+        /**
+         * Adds a value with its bounding box to the tree
+         * @param box
+         * 			The bounding box of the value
+         * @param value
+         * 			The value
+         */
+        public void add(BoundingBox box, T value){
+            boxes.add(box);
+            values.add(value);
+        }
+
+        /**
+         * Builds the tree of the values added so far
+         * @return
+         * 			A new tree of the values
+         */
+        public RTree<T> build(){
+            List<BoundingBox[]> levels = new ArrayList<BoundingBox[]>();
+            List<int[]> firstChildren = new ArrayList<int[]>();
+
+            /*
+             * Sorts the values, then groups each level in the nodes of the level above, sorted in turn,
+             * until the nodes fit in a single node. A node's children are the consecutive boxes from its first child
+             */
+            Integer[] order = strOrder(boxes.toArray(new BoundingBox[boxes.size()]));
+            BoundingBox[] level = new BoundingBox[order.length];
+            List<T> sortedValues = new ArrayList<T>(order.length);
+            for(int i=0; i<order.length; i++){
+                level[i] = boxes.get(order[i]);
+                sortedValues.add(values.get(order[i]));
+            }
+            levels.add(level);
+            firstChildren.add(null);
+            while(level.length>NODE_CAPACITY){
+                int count = (level.length+NODE_CAPACITY-1)/NODE_CAPACITY;
+                BoundingBox[] parents = new BoundingBox[count];
+                for(int n=0; n<count; n++){
+                    BoundingBox union = level[n*NODE_CAPACITY];
+                    for(int i=n*NODE_CAPACITY+1; i<Math.min((n+1)*NODE_CAPACITY, level.length); i++) union = union.union(level[i]);
+                    parents[n] = union;
+                }
+                Integer[] parentOrder = strOrder(parents);
+                level = new BoundingBox[count];
+                int[] first = new int[count];
+                for(int n=0; n<count; n++){
+                    level[n] = parents[parentOrder[n]];
+                    first[n] = parentOrder[n]*NODE_CAPACITY;
+                }
+                levels.add(level);
+                firstChildren.add(first);
+            }
+            return new RTree<T>(Collections.unmodifiableList(levels), Collections.unmodifiableList(firstChildren), Collections.unmodifiableList(sortedValues));
+        }
+
+        /**
+         * Gives the Sort-Tile-Recursive order of boxes, in slices of about the square root of the number of nodes
+         */
+        private static Integer[] strOrder(BoundingBox[] boxes){
+            Integer[] order = new Integer[boxes.length];
+            for(int i=0; i<order.length; i++) order[i] = i;
+            Arrays.sort(order, Comparator.comparingDouble(i -> boxes[i].minX()+boxes[i].maxX()));
+            int nodes = (boxes.length+NODE_CAPACITY-1)/NODE_CAPACITY;
+            int sliceSize = (int) Math.ceil(Math.sqrt(nodes))*NODE_CAPACITY;
+            for(int start=0; start<order.length; start+=sliceSize){
+                Arrays.sort(order, start, Math.min(start+sliceSize, order.length), Comparator.comparingDouble(i -> boxes[i].minY()+boxes[i].maxY()));
+            }
+            return order;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package ch.epfl.imhof.geometry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Simplifies polyLines and polygons with the Douglas-Peucker algorithm: the points of a polyLine
+ * are removed as long as the polyLine stays within a tolerance of the original one, so that the
+ * points falling in the same pixel of a map aren't drawn. The first point of a polyLine is always kept.
+ * The rings of a polygon keep their topology: a simplified ring crossing or touching itself or another
+ * ring of the polygon, or changing which rings contain it, is replaced by the original one
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+
+public final class Simplifier {
+
+    /**
+     * Below this number of segments, the segments of a polygon are compared by pairs without being sorted
+     */
+    private static final int SWEEP_THRESHOLD = 64;
+
+    private final double squaredTolerance;
+
+    /**
+     * Creates a simplifier with a given tolerance
+     * @param tolerance
+     * 			The largest distance between a removed point and the simplified polyLine
+     * @throws IllegalArgumentException
+     * 			When the tolerance is negative
+     */
+    public Simplifier(double tolerance){
+        if(!(tolerance>=0)) throw new IllegalArgumentException();
+        this.squaredTolerance = tolerance*tolerance;
+    }
+
+    /**
+     * Simplifies a polyLine, open or closed
+     * @param polyLine
+     * 			The polyLine to be simplified
+     * @return
+     * 			The simplified polyLine, stored with the encoding of the given one, or the given one when no point is removed
+     */
+    public PolyLine simplify(PolyLine polyLine){
+        return polyLine.isClosed() ? simplify((ClosedPolyLine) polyLine) : simplify((OpenPolyLine) polyLine);
+    }
+
+    /**
+     * Simplifies an open polyLine, keeping its first and last points
+     * @param polyLine
+     * 			The open polyLine to be simplified
+     * @return
+     * 			The simplified polyLine, stored with the encoding of the given one, or the given one when no point is removed
+     */
+    public OpenPolyLine simplify(OpenPolyLine polyLine){
+        int n = polyLine.pointsCount();
+        if(n<3) return polyLine;
+        double[] coordinates = coordinates(polyLine);
+        boolean[] kept = new boolean[n];
+        kept[0] = kept[n-1] = true;
+        keepPoints(coordinates, 0, n-1, kept);
+        return keptCount(kept)==n ? polyLine : builder(coordinates, kept).buildOpen(polyLine.encoding());
+    }
+
+    /**
+     * Simplifies a closed polyLine, which keeps at least three points and doesn't cross or touch itself
+     * @param polyLine
+     * 			The closed polyLine to be simplified
+     * @return
+     * 			The simplified polyLine, stored with the encoding of the given one, or the given one when no point
+     * 			is removed or when the simplified polyLine wouldn't keep the topology of the given one
+     */
+    public ClosedPolyLine simplify(ClosedPolyLine polyLine){
+        return simplifyRings(Arrays.asList(polyLine)).get(0);
+    }
+
+    /**
+     * Simplifies the shell and the holes of a polygon
+     * @param polygon
+     * 			The polygon to be simplified
+     * @return
+     * 			The simplified polygon, whose rings are simplified as long as the topology of the polygon is kept,
+     * 			or the given one when none of its rings is simplified
+     */
+    public Polygon simplify(Polygon polygon){
+        List<ClosedPolyLine> rings = new ArrayList<ClosedPolyLine>(polygon.holes().size()+1);
+        rings.add(polygon.shell());
+        rings.addAll(polygon.holes());
+        List<ClosedPolyLine> simplified = simplifyRings(rings);
+        if(simplified==rings) return polygon;
+        return new Polygon(simplified.get(0), simplified.subList(1, simplified.size()));
+    }
+
+    /**
+     * Simplifies rings, the first one being the shell of a polygon when there are more than one,
+     * and replaces the simplified ones breaking the topology by the original ones until it's kept
+     * @return
+     * 			The simplified rings, or the given list when no ring is simplified
+     */
+    private List<ClosedPolyLine> simplifyRings(List<ClosedPolyLine> rings){
+        List<ClosedPolyLine> simplified = new ArrayList<ClosedPolyLine>(rings.size());
+        boolean changed = false;
+        for(ClosedPolyLine ring : rings){
+            ClosedPolyLine simplifiedRing = simplifyRing(ring);
+            simplified.add(simplifiedRing);
+            changed |= simplifiedRing!=ring;
+        }
+        while(changed){
+            boolean[] conflicts = conflicts(rings, simplified);
+            changed = false;
+            for(int r=0; r<rings.size(); r++){
+                if(conflicts[r] && simplified.get(r)!=rings.get(r)){
+                    simplified.set(r, rings.get(r));
+                    changed = true;
+                }
+            }
+            if(!changed){
+                for(int r=0; r<rings.size(); r++) if(simplified.get(r)!=rings.get(r)) return simplified;
+            }
+        }
+        return rings;
+    }
+
+    /**
+     * Simplifies a ring without checking its topology, from its first point and the point farthest from it
+     * @return
+     * 			The simplified ring, or the given one when no point is removed or when less than three points would be kept
+     */
+    private ClosedPolyLine simplifyRing(ClosedPolyLine ring){
+        int n = ring.pointsCount();
+        if(n<4) return ring;
+        double[] coordinates = coordinates(ring);
+        int farthest = 0;
+        double farthestDistance = 0;
+        for(int i=1; i<n; i++){
+            double dx = coordinates[2*i]-coordinates[0], dy = coordinates[2*i+1]-coordinates[1];
+            double distance = dx*dx+dy*dy;
+            if(distance>farthestDistance){
+                farthest = i;
+                farthestDistance = distance;
+            }
+        }
+        if(farthest==0) return ring;
+        boolean[] kept = new boolean[n+1];
+        kept[0] = kept[farthest] = kept[n] = true;
+        keepPoints(coordinates, 0, farthest, kept);
+        keepPoints(coordinates, farthest, n, kept);
+        kept = Arrays.copyOf(kept, n);
+        int count = keptCount(kept);
+        return count==n || count<3 ? ring : builder(coordinates, kept).buildClosed(ring.encoding());
+    }
+
+    /**
+     * Marks the points to be kept between two kept points of a polyLine given by its coordinates,
+     * the position n of a polyLine of n points being its first point
+     */
+    private void keepPoints(double[] coordinates, int first, int last, boolean[] kept){
+        int[] stack = new int[64];
+        int size = 0;
+        stack[size++] = first;
+        stack[size++] = last;
+        while(size>0){
+            int end = stack[--size], start = stack[--size];
+            int farthest = farthestPoint(coordinates, start, end);
+            if(farthest<0) continue;
+            kept[farthest] = true;
+            if(size+4>stack.length) stack = Arrays.copyOf(stack, 2*stack.length);
+            stack[size++] = start;
+            stack[size++] = farthest;
+            stack[size++] = farthest;
+            stack[size++] = end;
+        }
+    }
+
+    /**
+     * Gives the point between two points of a polyLine given by its coordinates which is the farthest from the segment
+     * joining them, the position n of a polyLine of n points being its first point
+     * @return
+     * 			The position of the farthest point, or -1 when all the points are within the tolerance of the segment
+     */
+    private int farthestPoint(double[] coordinates, int start, int end){
+        int n = coordinates.length/2;
+        double ax = coordinates[2*start], ay = coordinates[2*start+1];
+        double bx = coordinates[2*(end%n)], by = coordinates[2*(end%n)+1];
+        double dx = bx-ax, dy = by-ay;
+        double length = dx*dx+dy*dy;
+        double inverseLength = length==0 ? 0 : 1/length;
+        int farthest = -1;
+        double farthestDistance = squaredTolerance;
+        for(int i=start+1; i<end; i++){
+            /*
+             * The squared distance to the line of the segment, or to its nearest end when the point isn't beside it
+             */
+            double px = coordinates[2*i]-ax, py = coordinates[2*i+1]-ay;
+            double along = px*dx+py*dy, distance;
+            if(along<=0 || length==0){
+                distance = px*px+py*py;
+            } else if(along>=length){
+                double qx = coordinates[2*i]-bx, qy = coordinates[2*i+1]-by;
+                distance = qx*qx+qy*qy;
+            } else {
+                double across = px*dy-py*dx;
+                distance = across*across*inverseLength;
+            }
+            if(distance>farthestDistance){
+                farthest = i;
+                farthestDistance = distance;
+            }
+        }
+        return farthest;
+    }
+
+    private static int keptCount(boolean[] kept){
+        int count = 0;
+        for(boolean k : kept) if(k) count++;
+        return count;
+    }
+
+    private static PolyLine.Builder builder(double[] coordinates, boolean[] kept){
+        PolyLine.Builder builder = new PolyLine.Builder();
+        for(int i=0; i<kept.length; i++) if(kept[i]) builder.addPoint(coordinates[2*i], coordinates[2*i+1]);
+        return builder;
+    }
+
+    /**
+     * Gives the coordinates of the points of a polyLine, read without copy when they aren't encoded
+     */
+    private static double[] coordinates(PolyLine polyLine){
+        double[] packed = polyLine.packedCoordinates();
+        return packed!=null ? packed : polyLine.coordinates();
+    }
+
+    /**
+     * Finds the rings involved in a change of topology between the original rings and the simplified ones:
+     * the segments of two rings, or two segments of a ring not following each other, which share a point
+     * while one of the rings is simplified, and the rings whose first point changes of side of a simplified ring
+     * @return
+     * 			For each ring, a boolean stating if it's involved in a change of topology
+     */
+    private static boolean[] conflicts(List<ClosedPolyLine> rings, List<ClosedPolyLine> simplified){
+        boolean[] conflicts = new boolean[rings.size()];
+        findCrossings(simplified, rings, conflicts);
+
+        /*
+         * Without crossing, a ring is on a single side of a simplified ring, the one of its first point, kept by the simplification
+         */
+        for(int r=0; r<rings.size(); r++){
+            if(simplified.get(r)==rings.get(r)) continue;
+            BoundingBox box = rings.get(r).boundingBox().union(simplified.get(r).boundingBox());
+            for(int o=0; o<rings.size(); o++){
+                if(o==r || conflicts[r] && conflicts[o]) continue;
+                Point first = rings.get(o).firstPoint();
+                if(box.contains(first) && rings.get(r).containsPoint(first)!=simplified.get(r).containsPoint(first)){
+                    conflicts[r] = conflicts[o] = true;
+                }
+            }
+        }
+        return conflicts;
+    }
+
+    /**
+     * Marks the rings having segments sharing a point, when at least one of the rings is simplified
+     */
+    private static void findCrossings(List<ClosedPolyLine> simplified, List<ClosedPolyLine> rings, boolean[] conflicts){
+        int count = 0;
+        for(ClosedPolyLine ring : simplified) count += ring.pointsCount();
+        int[] ringOf = new int[count], indexOf = new int[count];
+        double[] minX = new double[count];
+        int s = 0;
+        for(int r=0; r<simplified.size(); r++){
+            ClosedPolyLine ring = simplified.get(r);
+            for(int i=0; i<ring.pointsCount(); i++, s++){
+                ringOf[s] = r;
+                indexOf[s] = i;
+                minX[s] = Math.min(ring.x(i), ring.x((i+1)%ring.pointsCount()));
+            }
+        }
+        if(count<=SWEEP_THRESHOLD){
+            for(int a=0; a<count; a++){
+                for(int b=a+1; b<count; b++) checkPair(a, b, ringOf, indexOf, simplified, rings, conflicts);
+            }
+            return;
+        }
+
+        /*
+         * Sweeps the segments sorted by their smallest x, comparing each one to the previous segments it can reach in x
+         */
+        Integer[] order = new Integer[count];
+        for(int i=0; i<count; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingDouble(i -> minX[i]));
+        int[] active = new int[count];
+        double[] activeMaxX = new double[count];
+        int activeCount = 0;
+        for(int a : order){
+            ClosedPolyLine ring = simplified.get(ringOf[a]);
+            int i = indexOf[a];
+            double maxX = Math.max(ring.x(i), ring.x((i+1)%ring.pointsCount()));
+            int kept = 0;
+            for(int k=0; k<activeCount; k++){
+                if(activeMaxX[k]<minX[a]) continue;
+                active[kept] = active[k];
+                activeMaxX[kept++] = activeMaxX[k];
+                checkPair(active[k], a, ringOf, indexOf, simplified, rings, conflicts);
+            }
+            active[kept] = a;
+            activeMaxX[kept++] = maxX;
+            activeCount = kept;
+        }
+    }
+
+    /**
+     * Marks the rings of two segments sharing a point, unless both rings are original or the segments follow each other in a ring
+     */
+    private static void checkPair(int a, int b, int[] ringOf, int[] indexOf, List<ClosedPolyLine> simplified, List<ClosedPolyLine> rings, boolean[] conflicts){
+        int ra = ringOf[a], rb = ringOf[b];
+        if(simplified.get(ra)==rings.get(ra) && simplified.get(rb)==rings.get(rb)) return;
+        ClosedPolyLine ringA = simplified.get(ra), ringB = simplified.get(rb);
+        int n = ringA.pointsCount(), ia = indexOf[a], ib = indexOf[b];
+        if(ra==rb && ((ia+1)%n==ib || (ib+1)%n==ia)) return;
+        if(segmentsIntersect(ringA.x(ia), ringA.y(ia), ringA.x((ia+1)%n), ringA.y((ia+1)%n),
+                ringB.x(ib), ringB.y(ib), ringB.x((ib+1)%ringB.pointsCount()), ringB.y((ib+1)%ringB.pointsCount()))){
+            conflicts[ra] = conflicts[rb] = true;
+        }
+    }
+
+    /**
+     * Checks whether the segment from a to b and the segment from c to d share at least a point
+     */
+    private static boolean segmentsIntersect(double ax, double ay, double bx, double by, double cx, double cy, double dx, double dy){
+        if(Math.max(ax, bx)<Math.min(cx, dx) || Math.max(cx, dx)<Math.min(ax, bx)
+                || Math.max(ay, by)<Math.min(cy, dy) || Math.max(cy, dy)<Math.min(ay, by)) return false;
+        double c = orientation(ax, ay, bx, by, cx, cy), d = orientation(ax, ay, bx, by, dx, dy);
+        double a = orientation(cx, cy, dx, dy, ax, ay), b = orientation(cx, cy, dx, dy, bx, by);
+
+        /*
+         * Segments on a same line whose bounding boxes intersect share a point
+         */
+        return c*d<=0 && a*b<=0;
+    }
+
+    /**
+     * Gives the sign of the turn from (ax, ay) to (bx, by) then to (cx, cy), zero when the points are aligned
+     */
+    private static double orientation(double ax, double ay, double bx, double by, double cx, double cy){
+        return Math.signum((bx-ax)*(cy-ay)-(by-ay)*(cx-ax));
+    }
+}
@@ -0,0 +1,120 @@
+package ch.epfl.imhof.osm;
+
+import java.util.Arrays;
+
+/**
+ * A map from identification numbers to indices, using open addressing on primitive arrays
+ * so that neither the insertions nor the lookups allocate objects
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+final class LongIndexMap {
+
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int ABSENT = -1;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+	private int mask;
+	private int resizeThreshold;
+
+	/**
+	 * Creates an empty map
+	 */
+	LongIndexMap(){
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Gives the number of keys in the map
+	 * @return
+	 * 			The number of keys in the map
+	 */
+	int size(){ return size; }
+
+	/**
+	 * Gives the size of the arrays of the map
+	 * @return
+	 * 			The size of the arrays, in bytes
+	 */
+	long heapSize(){ return keys.length*12L; }
+
+	/**
+	 * Gives the index associated with a given key
+	 * @param key
+	 * 			The key to search for
+	 * @return
+	 * 			The index associated with the key, -1 if the key isn't in the map
+	 */
+	int get(long key){
+		int slot = slot(key);
+		while(values[slot]!=ABSENT){
+			if(keys[slot]==key) return values[slot];
+			slot = (slot+1) & mask;
+		}
+		return ABSENT;
+	}
+
+	/**
+	 * Associates an index with a given key, replacing the previous one if any
+	 * @param key
+	 * 			The key
+	 * @param value
+	 * 			The index associated with the key, must be positive
+	 * @return
+	 * 			The index previously associated with the key, -1 if there was none
+	 * @throws IllegalArgumentException
+	 * 			when the index is negative
+	 */
+	int put(long key, int value) throws IllegalArgumentException{
+		if(value<0) throw new IllegalArgumentException();
+		int slot = slot(key);
+		while(values[slot]!=ABSENT){
+			if(keys[slot]==key){
+				int previous = values[slot];
+				values[slot] = value;
+				return previous;
+			}
+			slot = (slot+1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		if(++size>resizeThreshold) rehash();
+		return ABSENT;
+	}
+
+	/**
+	 * Gives the slot where the search for a key starts, mixing the bits of the key since
+	 * identification numbers are often consecutive
+	 */
+	private int slot(long key){
+		long h = key*0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	private void allocate(int capacity){
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(values, ABSENT);
+		mask = capacity-1;
+		resizeThreshold = capacity/4*3;
+	}
+
+	/**
+	 * Doubles the capacity of the map, inserting the keys again
+	 */
+	private void rehash(){
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(keys.length*2);
+		for(int i=0; i<oldKeys.length; i++){
+			if(oldValues[i]==ABSENT) continue;
+			int slot = slot(oldKeys[i]);
+			while(values[slot]!=ABSENT) slot = (slot+1) & mask;
+			keys[slot] = oldKeys[i];
+			values[slot] = oldValues[i];
+		}
+	}
+}
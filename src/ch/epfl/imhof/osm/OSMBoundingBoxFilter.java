@@ -0,0 +1,331 @@
+package ch.epfl.imhof.osm;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.dem.Earth;
+import ch.epfl.imhof.osm.OSMRelation.Member.Type;
+
+/**
+ * Restricts the reading of an OpenStreetMap file to the entities touching a bounding box. The
+ * file is read a first time to find on which sides of the box, extended by a margin, each node
+ * lies, and to select the open ways having a segment which may cross the box, the closed ways
+ * whose bounding box intersects the box, so that the rings around the box are kept, and the
+ * relations whose ways have a bounding box intersecting the box. When a selected relation has
+ * members outside of the box, a second reading collects the nodes of these members. The last
+ * reading only passes the selected entities, and the nodes they refer to, to the assembler, so
+ * that the entities outside of the box are never built
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+final class OSMBoundingBoxFilter {
+
+	private final double minLongitude, minLatitude, maxLongitude, maxLatitude;
+	private final boolean clipWays;
+
+	/*
+	 * The sides of the box a node or a way lies beyond, as the bits of a code: 0 inside the box
+	 */
+	private static final int LEFT = 1, RIGHT = 2, BELOW = 4, ABOVE = 8;
+
+	private LongIndexMap nodeCodes = new LongIndexMap();
+	private LongIndexMap wayCodes = new LongIndexMap();
+	private final LongIndexMap neededNodes = new LongIndexMap();
+	private final LongIndexMap keptWays = new LongIndexMap();
+	private final LongIndexMap keptRelations = new LongIndexMap();
+	private final LongIndexMap completedWays = new LongIndexMap();
+	private final LongIndexMap clipStarts = new LongIndexMap();
+	private final LongIndexMap clipEnds = new LongIndexMap();
+	private int passes;
+
+	/**
+	 * Creates a filter keeping the entities touching a bounding box
+	 * @param bottomLeft
+	 * 			The bottom left corner of the box
+	 * @param topRight
+	 * 			The top right corner of the box
+	 * @param margin
+	 * 			The distance by which the box is extended on each side, in meters
+	 * @param clipWays
+	 * 			Boolean stating if the open ways are cut down to their part in the extended box
+	 * @throws IllegalArgumentException
+	 * 			when the corners are not ordered, or when the margin is negative
+	 */
+	OSMBoundingBoxFilter(PointGeo bottomLeft, PointGeo topRight, double margin, boolean clipWays) throws IllegalArgumentException{
+		if(bottomLeft.longitude()>topRight.longitude() || bottomLeft.latitude()>topRight.latitude() || !(margin>=0))
+			throw new IllegalArgumentException();
+		/*
+		 * The margin is converted to an angle on the meridian, and on the parallel farthest from the equator
+		 */
+		double latitudeMargin = margin/Earth.RADIUS;
+		this.minLatitude = Math.max(-Math.PI/2, bottomLeft.latitude()-latitudeMargin);
+		this.maxLatitude = Math.min(Math.PI/2, topRight.latitude()+latitudeMargin);
+		double cos = Math.cos(Math.max(Math.abs(minLatitude), Math.abs(maxLatitude)));
+		double longitudeMargin = cos>1e-9 ? margin/(Earth.RADIUS*cos) : Math.PI;
+		this.minLongitude = Math.max(-Math.PI, bottomLeft.longitude()-longitudeMargin);
+		this.maxLongitude = Math.min(Math.PI, topRight.longitude()+longitudeMargin);
+		this.clipWays = clipWays;
+	}
+
+	/**
+	 * Reads a source as many times as needed, passing the selected entities to an assembler
+	 * @param source
+	 * 			The source read, each reading passing all its entities to a handler
+	 * @param assembler
+	 * 			The assembler receiving the selected entities
+	 * @return
+	 * 			The OSMMap built by the assembler
+	 */
+	<X extends Exception> OSMMap read(Source<X> source, OSMMapAssembler assembler) throws IOException, X{
+		passes = 1;
+		source.read(new Selection());
+		nodeCodes = null;
+		wayCodes = null;
+		if(completedWays.size()>0){
+			passes++;
+			source.read(new Completion());
+		}
+		passes++;
+		source.read(new Filter(assembler));
+		return assembler.build();
+	}
+
+	/**
+	 * Gives the number of times the source was read by the last call to read
+	 */
+	int passes(){ return passes; }
+
+	/**
+	 * Represents a source of entities that can be read several times, such as a file
+	 */
+	interface Source<X extends Exception> {
+
+		/**
+		 * Reads all the entities of the source
+		 * @param handler
+		 * 			The handler receiving the entities
+		 */
+		void read(OSMHandler handler) throws IOException, X;
+	}
+
+	/**
+	 * Gives the sides of the box a point lies beyond, two points whose codes have no common side
+	 * being possibly joined by a segment crossing the box, and a group of points whose codes have
+	 * no common side having a bounding box which intersects the box
+	 */
+	private int code(double longitude, double latitude){
+		return (longitude<minLongitude ? LEFT : longitude>maxLongitude ? RIGHT : 0)
+				| (latitude<minLatitude ? BELOW : latitude>maxLatitude ? ABOVE : 0);
+	}
+
+	private static boolean contains(LongIndexMap set, long id){ return set.get(id)>=0; }
+
+	private static void add(LongIndexMap set, long id){ set.put(id, 0); }
+
+	/**
+	 * Selects the ways and the relations touching the box, during the first reading. The nodes which aren't
+	 * in the file have the code -1, beyond all the sides, so that they're ignored
+	 */
+	private final class Selection implements OSMHandler {
+
+		private long[] refs = new long[64];
+		private int refsCount;
+		private long wayId;
+		private long relationId;
+		private boolean inWay, inRelation;
+		private int relationCode;
+		private long[] members = new long[16];
+		private int membersCount;
+
+		@Override
+		public void startNode(long id, double longitude, double latitude) {
+			nodeCodes.put(id, code(longitude, latitude));
+		}
+
+		@Override
+		public void startWay(long id) {
+			wayId = id;
+			inWay = true;
+			refsCount = 0;
+		}
+
+		@Override
+		public void startRelation(long id) {
+			relationId = id;
+			inRelation = true;
+			relationCode = -1;
+			membersCount = 0;
+		}
+
+		@Override
+		public void nodeReference(long ref) {
+			if(refsCount==refs.length) refs = Arrays.copyOf(refs, refsCount*2);
+			refs[refsCount++] = ref;
+		}
+
+		@Override
+		public void member(Type type, long ref, String role) {
+			if(type!=Type.WAY) return;
+			relationCode &= contains(keptWays, ref) ? 0 : wayCodes.get(ref);
+			if(membersCount==members.length) members = Arrays.copyOf(members, membersCount*2);
+			members[membersCount++] = ref;
+		}
+
+		@Override
+		public void tag(String key, String value) {}
+
+		@Override
+		public void endEntity() {
+			if(inWay) endWay();
+			else if(inRelation) endRelation();
+			inWay = false;
+			inRelation = false;
+		}
+
+		private void endWay(){
+			/*
+			 * The first and last nodes of the nodes inside the box and of the segments which may cross it,
+			 * so that a clipped way keeps its segments crossing the border of the box
+			 */
+			int first = -1, last = -1;
+			int wayCode = -1, previousCode = -1;
+			for(int i=0; i<refsCount; i++){
+				int code = nodeCodes.get(refs[i]);
+				wayCode &= code;
+				boolean crossing = i>0 && (code & previousCode)==0;
+				if(code==0 || crossing){
+					if(first<0) first = crossing ? i-1 : i;
+					last = i;
+				}
+				previousCode = code;
+			}
+			boolean closed = refsCount>0 && refs[0]==refs[refsCount-1];
+			if(first<0 && !(closed && wayCode==0)){
+				if(wayCode>=0) wayCodes.put(wayId, wayCode);
+				return;
+			}
+			add(keptWays, wayId);
+			int start = 0, end = refsCount-1;
+			/*
+			 * Only open ways are clipped
+			 */
+			if(clipWays && !closed){
+				start = first;
+				end = last;
+				if(start>0 || end<refsCount-1){
+					clipStarts.put(wayId, start);
+					clipEnds.put(wayId, end);
+				}
+			}
+			for(int i=start; i<=end; i++) add(neededNodes, refs[i]);
+		}
+
+		private void endRelation(){
+			if(relationCode!=0) return;
+			add(keptRelations, relationId);
+			/*
+			 * The rings of a relation need all its ways, complete, even those outside of the box
+			 */
+			for(int i=0; i<membersCount; i++){
+				long ref = members[i];
+				if(!contains(keptWays, ref) || clipStarts.get(ref)>=0) add(completedWays, ref);
+			}
+		}
+	}
+
+	/**
+	 * Collects the nodes of the ways kept for a relation, during the second reading
+	 */
+	private final class Completion implements OSMHandler {
+
+		private boolean completedWay;
+
+		@Override
+		public void startNode(long id, double longitude, double latitude) {}
+
+		@Override
+		public void startWay(long id) { completedWay = contains(completedWays, id); }
+
+		@Override
+		public void startRelation(long id) {}
+
+		@Override
+		public void nodeReference(long ref) {
+			if(completedWay) add(neededNodes, ref);
+		}
+
+		@Override
+		public void member(Type type, long ref, String role) {}
+
+		@Override
+		public void tag(String key, String value) {}
+
+		@Override
+		public void endEntity() { completedWay = false; }
+	}
+
+	/**
+	 * Passes the selected entities to the assembler, during the last reading
+	 */
+	private final class Filter implements OSMHandler {
+
+		private final OSMHandler handler;
+		private boolean kept;
+		private int refIndex;
+		private int clipStart = -1;
+		private int clipEnd;
+
+		Filter(OSMHandler handler){
+			this.handler = handler;
+		}
+
+		@Override
+		public void startNode(long id, double longitude, double latitude) {
+			kept = contains(neededNodes, id);
+			if(kept) handler.startNode(id, longitude, latitude);
+		}
+
+		@Override
+		public void startWay(long id) {
+			boolean completed = contains(completedWays, id);
+			kept = completed || contains(keptWays, id);
+			if(!kept) return;
+			refIndex = 0;
+			clipStart = completed ? -1 : clipStarts.get(id);
+			clipEnd = clipStart<0 ? -1 : clipEnds.get(id);
+			handler.startWay(id);
+		}
+
+		@Override
+		public void startRelation(long id) {
+			kept = contains(keptRelations, id);
+			if(kept) handler.startRelation(id);
+		}
+
+		@Override
+		public void nodeReference(long ref) {
+			if(!kept) return;
+			int index = refIndex++;
+			if(clipStart<0 || (index>=clipStart && index<=clipEnd)) handler.nodeReference(ref);
+		}
+
+		@Override
+		public void member(Type type, long ref, String role) {
+			if(kept) handler.member(type, ref, role);
+		}
+
+		@Override
+		public void tag(String key, String value) {
+			if(kept) handler.tag(key, value);
+		}
+
+		@Override
+		public void endEntity() {
+			if(kept) handler.endEntity();
+			kept = false;
+			clipStart = -1;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package ch.epfl.imhof.osm;
+
+import ch.epfl.imhof.osm.OSMRelation.Member.Type;
+
+/**
+ * Receives the entities of an OpenStreetMap file in the order in which a reader decodes them.
+ * A node, way or relation is opened by its start method, followed by its tags, node references
+ * or members, and closed by endEntity. In an osmChange file the entities are grouped in
+ * sections creating, modifying or deleting them
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+interface OSMHandler {
+
+	/**
+	 * Starts a new node
+	 * @param id
+	 * 			Identification number of the node
+	 * @param longitude
+	 * 			Longitude of the node, in radians
+	 * @param latitude
+	 * 			Latitude of the node, in radians
+	 */
+	void startNode(long id, double longitude, double latitude);
+
+	/**
+	 * Starts a new way
+	 * @param id
+	 * 			Identification number of the way
+	 */
+	void startWay(long id);
+
+	/**
+	 * Starts a new relation
+	 * @param id
+	 * 			Identification number of the relation
+	 */
+	void startRelation(long id);
+
+	/**
+	 * Adds a reference to a node to the current way
+	 * @param ref
+	 * 			Identification number of the referenced node
+	 */
+	void nodeReference(long ref);
+
+	/**
+	 * Adds a member to the current relation
+	 * @param type
+	 * 			Type of the member
+	 * @param ref
+	 * 			Identification number of the member
+	 * @param role
+	 * 			Role of the member
+	 */
+	void member(Type type, long ref, String role);
+
+	/**
+	 * Adds a tag to the current entity
+	 * @param key
+	 * 			Key of the tag
+	 * @param value
+	 * 			Value of the tag
+	 */
+	void tag(String key, String value);
+
+	/**
+	 * Ends the current node, way or relation
+	 */
+	void endEntity();
+
+	/**
+	 * Starts a section of an osmChange file, the entities until the next section being created,
+	 * modified or deleted. The nodes of a delete section may have no coordinates, which are then NaN.
+	 * Ignored by default, as the sections only exist in osmChange files
+	 * @param action
+	 * 			The action applied to the entities of the section
+	 */
+	default void startChangeSection(ChangeAction action) {}
+
+	/**
+	 * Represents the actions of the sections of an osmChange file
+	 */
+	enum ChangeAction { CREATE, MODIFY, DELETE }
+}
@@ -0,0 +1,112 @@
+package ch.epfl.imhof.osm;
+
+import java.util.Arrays;
+
+import ch.epfl.imhof.osm.OSMRelation.Member.Type;
+
+/**
+ * A handler recording the entities it receives in compact primitive arrays, so that they
+ * can be decoded by one thread and passed to another handler later, in the same order
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+final class OSMHandlerRecorder implements OSMHandler {
+
+	private static final byte NODE = 0, WAY = 1, RELATION = 2, NODE_REFERENCE = 3, MEMBER = 4, TAG = 5, END = 6;
+
+	private byte[] events = new byte[256];
+	private int eventsCount;
+	private long[] longs = new long[256];
+	private int longsCount;
+	private double[] doubles = new double[64];
+	private int doublesCount;
+	private Object[] objects = new Object[64];
+	private int objectsCount;
+
+	@Override
+	public void startNode(long id, double longitude, double latitude) {
+		event(NODE);
+		addLong(id);
+		addDouble(longitude);
+		addDouble(latitude);
+	}
+
+	@Override
+	public void startWay(long id) {
+		event(WAY);
+		addLong(id);
+	}
+
+	@Override
+	public void startRelation(long id) {
+		event(RELATION);
+		addLong(id);
+	}
+
+	@Override
+	public void nodeReference(long ref) {
+		event(NODE_REFERENCE);
+		addLong(ref);
+	}
+
+	@Override
+	public void member(Type type, long ref, String role) {
+		event(MEMBER);
+		addLong(ref);
+		addObject(type);
+		addObject(role);
+	}
+
+	@Override
+	public void tag(String key, String value) {
+		event(TAG);
+		addObject(key);
+		addObject(value);
+	}
+
+	@Override
+	public void endEntity() {
+		event(END);
+	}
+
+	/**
+	 * Passes the recorded entities to another handler, in the order they were received
+	 * @param handler
+	 * 			The handler receiving the entities
+	 */
+	void replay(OSMHandler handler){
+		int l = 0, d = 0, o = 0;
+		for(int i=0; i<eventsCount; i++){
+			switch(events[i]){
+				case NODE: handler.startNode(longs[l++], doubles[d++], doubles[d++]); break;
+				case WAY: handler.startWay(longs[l++]); break;
+				case RELATION: handler.startRelation(longs[l++]); break;
+				case NODE_REFERENCE: handler.nodeReference(longs[l++]); break;
+				case MEMBER: handler.member((Type) objects[o++], longs[l++], (String) objects[o++]); break;
+				case TAG: handler.tag((String) objects[o++], (String) objects[o++]); break;
+				case END: handler.endEntity(); break;
+			}
+		}
+	}
+
+	private void event(byte event){
+		if(eventsCount==events.length) events = Arrays.copyOf(events, eventsCount*2);
+		events[eventsCount++] = event;
+	}
+
+	private void addLong(long value){
+		if(longsCount==longs.length) longs = Arrays.copyOf(longs, longsCount*2);
+		longs[longsCount++] = value;
+	}
+
+	private void addDouble(double value){
+		if(doublesCount==doubles.length) doubles = Arrays.copyOf(doubles, doublesCount*2);
+		doubles[doublesCount++] = value;
+	}
+
+	private void addObject(Object value){
+		if(objectsCount==objects.length) objects = Arrays.copyOf(objects, objectsCount*2);
+		objects[objectsCount++] = value;
+	}
+}
@@ -3,9 +3,7 @@ package ch.epfl.imhof.osm;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * A map of attributes that links a value (PolyLine, Node, Way) to it's attributes
@@ -51,16 +49,89 @@ public final class  OSMMap {
 	
 	public static class Builder{
 		
-		private final Map<Long,OSMNode> nodes = new HashMap<Long,OSMNode>();
-		private final Map<Long,OSMWay> ways = new HashMap<Long,OSMWay>();
-		private final Map<Long,OSMRelation> relations = new HashMap<Long,OSMRelation>();
+		/**
+		 * The estimated size of an OSMNode kept in the list, with its PointGeo and its index
+		 */
+		private static final int NODE_OBJECT_SIZE = 96;
+		
+		/*
+		 * The entities are kept in lists, in the order they were added, and found through
+		 * primitive maps from their identification number to their index in the lists
+		 */
+		private List<OSMNode> nodes = new ArrayList<OSMNode>();
+		private final List<OSMWay> ways = new ArrayList<OSMWay>();
+		private final List<OSMRelation> relations = new ArrayList<OSMRelation>();
+		private LongIndexMap nodeIndices = new LongIndexMap();
+		private final LongIndexMap wayIndices = new LongIndexMap();
+		private final LongIndexMap relationIndices = new LongIndexMap();
+		private OSMNodeTable nodeTable;
+		private OSMNodeStore nodeStore;
+		
+		/**
+		 * Creates a builder keeping the nodes as OSMNodes
+		 */
+		public Builder(){ this.nodeTable = null; }
+		
+		/**
+		 * Creates a builder keeping the nodes in a columnar node table
+		 * @param nodeTable
+		 * 			The table in which the nodes are stored
+		 */
+		public Builder(OSMNodeTable nodeTable){ this.nodeTable = nodeTable; }
+		
+		/**
+		 * Gives the table in which the nodes are stored
+		 * @return
+		 * 			The node table, null when the nodes are kept as OSMNodes
+		 */
+		public OSMNodeTable nodeTable(){ return nodeTable; }
+		
+		/**
+		 * Gives the memory-mapped store in which the nodes are stored once they were moved out of the heap
+		 * @return
+		 * 			The node store, null while the nodes are in the heap
+		 */
+		OSMNodeStore nodeStore(){ return nodeStore; }
+		
+		/**
+		 * Estimates the heap taken by the nodes added so far
+		 * @return
+		 * 			The estimated size of the nodes, in bytes, 0 when they're in a node store
+		 */
+		long nodesHeapSize(){
+			if(nodeStore!=null) return 0;
+			if(nodeTable!=null) return nodeTable.heapSize();
+			return (long) nodes.size()*NODE_OBJECT_SIZE+nodeIndices.heapSize();
+		}
+		
+		/**
+		 * Moves the nodes added so far to a node store, in which the next nodes are added too.
+		 * The nodes must be moved before any way refers to them
+		 * @param store
+		 * 			The empty store in which the nodes are stored
+		 */
+		void storeNodes(OSMNodeStore store){
+			if(nodeTable!=null){
+				for(int i=0; i<nodeTable.size(); i++) store.add(nodeTable.id(i), nodeTable.longitude(i), nodeTable.latitude(i), nodeTable.attributes(i));
+			} else {
+				for(OSMNode node : nodes) store.add(node.id(), node.position().longitude(), node.position().latitude(), node.attributes());
+			}
+			nodeTable = null;
+			nodes = new ArrayList<OSMNode>();
+			nodeIndices = new LongIndexMap();
+			nodeStore = store;
+		}
 		
 		/**
 		 * Adds a node to a list of nodes in an OSMMap
 		 * @param node
 		 * 			A node that will be added to a list of nodes in an OSMMap
 		 */
-		public void addNode(OSMNode node){ nodes.put(node.id(),node);}
+		public void addNode(OSMNode node){ 
+			if(nodeTable!=null) nodeTable.add(node.id(), node.position().longitude(), node.position().latitude(), node.attributes());
+			else if(nodeStore!=null) nodeStore.add(node.id(), node.position().longitude(), node.position().latitude(), node.attributes());
+			else add(nodes, nodeIndices, node);
+		}
 		
 		/**
 		 * Searches for a node with a given identification number in a list of nodes in an OSMMap
@@ -69,14 +140,21 @@ public final class  OSMMap {
 		 * @return
 		 * 			OSMNode with a given id or null, if it doesn't exist
 		 */
-		public OSMNode nodeForId(long id){ return nodes.get(id); }
+		public OSMNode nodeForId(long id){ 
+			if(nodeTable!=null){
+				int index = nodeTable.indexOf(id);
+				return index<0 ? null : nodeTable.node(index);
+			}
+			if(nodeStore!=null) return nodeStore.contains(id) ? nodeStore.node(id) : null;
+			return get(nodes, nodeIndices, id); 
+		}
 		
 		/**
 		 * Adds a way to a list of ways in an OSMMap
 		 * @param newWay
 		 * 			A way that will be added to a list of ways in an OSMMap
 		 */
-		public void addWay(OSMWay newWay){ ways.put(newWay.id(),newWay);}
+		public void addWay(OSMWay newWay){ add(ways, wayIndices, newWay);}
 		 
 		/**
 		 * Searches for a way with a given identification number in a list of ways in an OSMMap
@@ -85,14 +163,14 @@ public final class  OSMMap {
 		 * @return
 		 * 			OSMWay with a given id or null, if it doesn't exist
 		 */			
-		public OSMWay wayForId(long id){ return ways.get(id); }
+		public OSMWay wayForId(long id){ return get(ways, wayIndices, id); }
 		
 		/**
 		 * Adds a relation to a list of relations in an OSMMap
 		 * @param realtion
 		 * 			A relation that will be added to a list of relations in an OSMMap
 		 */
-		public void addRelation(OSMRelation relation){ relations.put(relation.id(),relation); }
+		public void addRelation(OSMRelation relation){ add(relations, relationIndices, relation); }
 		
 		/**
 		 * Searches for a relation with a given identification number in a list of relations in an OSMMap
@@ -101,14 +179,35 @@ public final class  OSMMap {
 		 * @return
 		 * 			OSMRelation with a given id or null, if it doesn't exist
 		 */		
-		public OSMRelation relationForId(long id){ return relations.get(id); }
+		public OSMRelation relationForId(long id){ return get(relations, relationIndices, id); }
 		
 		/**
 		 * Builds an OSMMap using a list of ways and a list of relations
 		 * @return
 		 * 			A new map built using a list of ways and a list of relations
 		 */
-		public OSMMap build(){ return new OSMMap(ways.values(), relations.values()); }
+		public OSMMap build(){ return new OSMMap(ways, relations); }
+		
+		/**
+		 * Adds an entity to a list, replacing the entity with the same identification number if there's one
+		 */
+		private static <E extends OSMEntity> void add(List<E> entities, LongIndexMap indices, E entity){
+			int index = indices.get(entity.id());
+			if(index<0){
+				indices.put(entity.id(), entities.size());
+				entities.add(entity);
+			} else {
+				entities.set(index, entity);
+			}
+		}
+		
+		/**
+		 * Gives the entity of a list with a given identification number, null if there's none
+		 */
+		private static <E extends OSMEntity> E get(List<E> entities, LongIndexMap indices, long id){
+			int index = indices.get(id);
+			return index<0 ? null : entities.get(index);
+		}
 	}
 		
 }
@@ -0,0 +1,236 @@
+package ch.epfl.imhof.osm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.osm.OSMRelation.Member.Type;
+
+/**
+ * Assembles the entities received from a reader into an OSMMap, resolving the nodes of ways
+ * and the members of relations as they arrive. When the nodes exceed a memory budget before
+ * the first way, they are moved to a memory-mapped OSMNodeStore. In streaming mode the complete
+ * ways and relations are also passed to listeners as they're completed, the relations then not
+ * being kept, and the ways only being kept as the possible members of the next relations
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+final class OSMMapAssembler implements OSMHandler {
+
+	/**
+	 * The number of nodes between two checks of the memory budget
+	 */
+	private static final int BUDGET_CHECK_INTERVAL = 1 << 14;
+
+	private final OSMMap.Builder mapBuilder;
+	private OSMNodeTable nodeTable;
+	private OSMNodeStore nodeStore;
+	private final Set<String> keptKeys;
+	private final long nodeMemoryBudget;
+	private final File nodeStoreDirectory;
+	private int nodesCount;
+	private boolean waysStarted;
+	private OSMNode.Builder nodeBuilder;
+	private boolean tableNode;
+	private long nodeId;
+	private double nodeLongitude;
+	private double nodeLatitude;
+	private Attributes.Builder nodeAttributes;
+	private OSMWay.Builder wayBuilder;
+	private OSMRelation.Builder relationBuilder;
+	private final Consumer<OSMWay> wayListener;
+	private final Consumer<OSMRelation> relationListener;
+
+	/**
+	 * Creates an assembler adding the entities to a given builder
+	 * @param mapBuilder
+	 * 			The builder in which the complete entities are added
+	 */
+	OSMMapAssembler(OSMMap.Builder mapBuilder){
+		this(mapBuilder, null, Long.MAX_VALUE, null);
+	}
+
+	/**
+	 * Creates an assembler adding the entities to a given builder, keeping only the tags having given keys
+	 * @param mapBuilder
+	 * 			The builder in which the complete entities are added
+	 * @param keptKeys
+	 * 			The keys of the tags kept, or null to keep all the tags
+	 * @param nodeMemoryBudget
+	 * 			The size in bytes of the nodes in the heap above which they are moved to a node store
+	 * @param nodeStoreDirectory
+	 * 			The directory of the file of the node store, or null for the default temporary directory
+	 */
+	OSMMapAssembler(OSMMap.Builder mapBuilder, Set<String> keptKeys, long nodeMemoryBudget, File nodeStoreDirectory){
+		this(mapBuilder, keptKeys, nodeMemoryBudget, nodeStoreDirectory, null, null);
+	}
+
+	/**
+	 * Creates an assembler adding the ways to a given builder and passing the complete ways and relations to listeners
+	 * @param mapBuilder
+	 * 			The builder in which the complete ways are added
+	 * @param keptKeys
+	 * 			The keys of the tags kept, or null to keep all the tags
+	 * @param nodeMemoryBudget
+	 * 			The size in bytes of the nodes in the heap above which they are moved to a node store
+	 * @param nodeStoreDirectory
+	 * 			The directory of the file of the node store, or null for the default temporary directory
+	 * @param wayListener
+	 * 			The listener receiving each complete way, or null
+	 * @param relationListener
+	 * 			The listener receiving each complete relation instead of the builder, or null to add the relations to the builder
+	 */
+	OSMMapAssembler(OSMMap.Builder mapBuilder, Set<String> keptKeys, long nodeMemoryBudget, File nodeStoreDirectory, Consumer<OSMWay> wayListener, Consumer<OSMRelation> relationListener){
+		/*
+		 * The attributes of each file read have their own dictionary, freed with the map
+		 */
+		Attributes.newDictionary();
+		this.wayListener = wayListener;
+		this.relationListener = relationListener;
+		this.mapBuilder = mapBuilder;
+		this.nodeTable = mapBuilder.nodeTable();
+		this.nodeStore = mapBuilder.nodeStore();
+		this.keptKeys = keptKeys;
+		this.nodeMemoryBudget = nodeMemoryBudget;
+		this.nodeStoreDirectory = nodeStoreDirectory;
+	}
+
+	@Override
+	public void startNode(long id, double longitude, double latitude) {
+		if(nodeTable==null && nodeStore==null){
+			nodeBuilder = new OSMNode.Builder(id, new PointGeo(longitude, latitude));
+			return;
+		}
+		/*
+		 * The nodes stored in a table or a store don't need any object, the attributes are only built for tagged nodes
+		 */
+		tableNode = true;
+		nodeId = id;
+		nodeLongitude = longitude;
+		nodeLatitude = latitude;
+		nodeAttributes = null;
+	}
+
+	@Override
+	public void startWay(long id) {
+		waysStarted = true;
+		if(nodeStore!=null) wayBuilder = new OSMWay.Builder(id, nodeStore);
+		else wayBuilder = nodeTable==null ? new OSMWay.Builder(id) : new OSMWay.Builder(id, nodeTable);
+	}
+
+	@Override
+	public void startRelation(long id) {
+		relationBuilder = new OSMRelation.Builder(id);
+	}
+
+	@Override
+	public void nodeReference(long ref) {
+		if(wayBuilder==null) return;
+		if(nodeTable!=null){
+			int index = nodeTable.indexOf(ref);
+			if(index>=0) wayBuilder.addNodeIndex(index);
+			else wayBuilder.setIncomplete();
+			return;
+		}
+		if(nodeStore!=null){
+			if(nodeStore.contains(ref)) wayBuilder.addNodeId(ref);
+			else wayBuilder.setIncomplete();
+			return;
+		}
+		OSMNode node = mapBuilder.nodeForId(ref);
+		if(node!=null) wayBuilder.addNode(node);
+		else wayBuilder.setIncomplete();
+	}
+
+	@Override
+	public void member(Type type, long ref, String role) {
+		if(relationBuilder==null) return;
+		OSMWay way = mapBuilder.wayForId(ref);
+		if(way!=null) relationBuilder.addMember(type, role, way);
+		else relationBuilder.setIncomplete();
+	}
+
+	@Override
+	public void tag(String key, String value) {
+		if(keptKeys!=null && !keptKeys.contains(key)) return;
+		if(nodeBuilder!=null) nodeBuilder.setAttribute(key, value);
+		else if(tableNode){
+			if(nodeAttributes==null) nodeAttributes = new Attributes.Builder();
+			nodeAttributes.put(key, value);
+		}
+		else if(wayBuilder!=null) wayBuilder.setAttribute(key, value);
+		else if(relationBuilder!=null) relationBuilder.setAttribute(key, value);
+	}
+
+	@Override
+	public void endEntity() {
+		if(nodeBuilder!=null){
+			mapBuilder.addNode(nodeBuilder.build());
+			nodeBuilder = null;
+			checkNodeMemoryBudget();
+		} else if(tableNode){
+			Attributes attributes = nodeAttributes==null ? null : nodeAttributes.build();
+			if(nodeStore!=null) nodeStore.add(nodeId, nodeLongitude, nodeLatitude, attributes);
+			else nodeTable.add(nodeId, nodeLongitude, nodeLatitude, attributes);
+			tableNode = false;
+			checkNodeMemoryBudget();
+		} else if(wayBuilder!=null){
+			if(!wayBuilder.isIncomplete()){
+				OSMWay way = wayBuilder.build();
+				mapBuilder.addWay(way);
+				if(wayListener!=null) wayListener.accept(way);
+			}
+			wayBuilder = null;
+		} else if(relationBuilder!=null){
+			if(!relationBuilder.isIncomplete()){
+				if(relationListener!=null) relationListener.accept(relationBuilder.build());
+				else mapBuilder.addRelation(relationBuilder.build());
+			}
+			relationBuilder = null;
+		}
+	}
+
+	/**
+	 * Moves the nodes to a node store when they exceed the memory budget, as long as no way refers to them
+	 * @throws UncheckedIOException
+	 * 			When the file of the store can't be created
+	 */
+	private void checkNodeMemoryBudget(){
+		if(++nodesCount%BUDGET_CHECK_INTERVAL!=0 || waysStarted || nodeStore!=null) return;
+		if(mapBuilder.nodesHeapSize()<=nodeMemoryBudget) return;
+		try{
+			nodeStore = new OSMNodeStore(nodeStoreDirectory);
+		} catch(IOException e){
+			throw new UncheckedIOException(e);
+		}
+		mapBuilder.storeNodes(nodeStore);
+		nodeTable = null;
+	}
+
+	/**
+	 * Builds the OSMMap from the entities received so far, closing the file of the node store if there's one,
+	 * the ways reading its nodes through the chunks already mapped
+	 * @return
+	 * 			The assembled OSMMap
+	 * @throws IOException
+	 * 			When the file of the node store can't be closed
+	 */
+	OSMMap build() throws IOException {
+		close();
+		return mapBuilder.build();
+	}
+
+	/**
+	 * Closes the file of the node store if there's one, once all the entities are received
+	 * @throws IOException
+	 * 			When the file of the node store can't be closed
+	 */
+	void close() throws IOException {
+		if(nodeStore!=null) nodeStore.close();
+	}
+}
@@ -0,0 +1,412 @@
+package ch.epfl.imhof.osm;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.xml.sax.SAXException;
+
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.osm.OSMRelation.Member;
+import ch.epfl.imhof.osm.OSMRelation.Member.Type;
+
+/**
+ * Represents a binary cache of an OSMMap. The nodes, ways and relations of the map are written
+ * once in a compact form, their tags and roles referring to a table of interned strings, and
+ * the cache is then read through a memory-mapped file instead of parsing the OpenStreetMap file
+ * again. The size and the modification date of the source file, and a fingerprint of the kept
+ * keys of the reader, are stored in the cache, which is ignored as soon as one of them changes
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+public final class OSMMapCache {
+
+	private static final int MAGIC = 0x4F534D43;
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 32;
+	private static final int WINDOW_SIZE = 1 << 28;
+	private static final Type[] TYPES = Type.values();
+
+	/**
+	 * Creates a cache of an OSMMap
+	 */
+	private OSMMapCache() {}
+
+	/**
+	 * Reads an OpenStreetMap file through its cache, the file being parsed and the cache written
+	 * when the cache doesn't exist or doesn't match the file anymore
+	 * @param fileName
+	 * 			Name of the file from which the data will be read, a PBF file when its name ends with .pbf
+	 * @param unGZip
+	 * 			Boolean stating if the given XML file is a GZIP file
+	 * @param cacheName
+	 * 			Name of the cache of the file
+	 * @param options
+	 * 			Options of the reader, the pipeline and the backend being only used to parse the file
+	 * @return
+	 * 			A new Map with the data from a given file
+	 * @throws IOException
+	 * 			when there are any errors with the input or the cache
+	 * @throws SAXException
+	 * 			when there are any errors with parsing the XML file
+	 */
+	public static OSMMap readOSMFile(String fileName, boolean unGZip, String cacheName, OSMMapReader.Options options) throws IOException, SAXException {
+		if(!isValid(fileName, cacheName, options)) return create(fileName, unGZip, cacheName, options);
+		OSMMapAssembler assembler = OSMMapReader.assembler(options);
+		replay(cacheName, assembler);
+		return assembler.build();
+	}
+
+	/**
+	 * Reads the entities of an OpenStreetMap file touching a bounding box through its cache, the
+	 * whole file being parsed and the cache written when the cache doesn't exist or doesn't match
+	 * the file anymore. The cache is read two or three times, as a file by OSMMapReader
+	 * @param fileName
+	 * 			Name of the file from which the data will be read, a PBF file when its name ends with .pbf
+	 * @param unGZip
+	 * 			Boolean stating if the given XML file is a GZIP file
+	 * @param cacheName
+	 * 			Name of the cache of the file
+	 * @param bottomLeft
+	 * 			The bottom left corner of the box
+	 * @param topRight
+	 * 			The top right corner of the box
+	 * @param margin
+	 * 			The distance by which the box is extended on each side, in meters
+	 * @param options
+	 * 			Options of the reader
+	 * @return
+	 * 			A new Map with the data of the given file touching the box
+	 * @throws IOException
+	 * 			when there are any errors with the input or the cache
+	 * @throws SAXException
+	 * 			when there are any errors with parsing the XML file
+	 * @throws IllegalArgumentException
+	 * 			when the corners of the box are not ordered, or when the margin is negative
+	 */
+	public static OSMMap readOSMFile(String fileName, boolean unGZip, String cacheName, PointGeo bottomLeft, PointGeo topRight, double margin, OSMMapReader.Options options) throws IOException, SAXException, IllegalArgumentException {
+		OSMBoundingBoxFilter filter = new OSMBoundingBoxFilter(bottomLeft, topRight, margin, options.clipWays());
+		if(!isValid(fileName, cacheName, options)) create(fileName, unGZip, cacheName, options);
+		return filter.read(handler -> replay(cacheName, handler), OSMMapReader.assembler(options));
+	}
+
+	/**
+	 * Checks whether a cache exists and was written for the current version of a file, read with the same kept keys
+	 * @param fileName
+	 * 			Name of the source file
+	 * @param cacheName
+	 * 			Name of the cache
+	 * @param options
+	 * 			Options of the reader
+	 * @return
+	 * 			True when the cache can be read instead of the file, false otherwise
+	 */
+	public static boolean isValid(String fileName, String cacheName, OSMMapReader.Options options){
+		File source = new File(fileName);
+		File cache = new File(cacheName);
+		if(!cache.isFile() || cache.length()<HEADER_SIZE) return false;
+		try(RandomAccessFile file = new RandomAccessFile(cache, "r")){
+			return file.readInt()==MAGIC && file.readInt()==VERSION && file.readLong()==source.length() && file.readLong()==source.lastModified()
+					&& file.readLong()==fingerprint(options);
+		} catch(IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the cache of a map read from a file. The cache is written next to its final
+	 * location and then moved, so that a cache being written is never read
+	 * @param map
+	 * 			The map to be written
+	 * @param fileName
+	 * 			Name of the file from which the map was read
+	 * @param cacheName
+	 * 			Name of the cache
+	 * @param options
+	 * 			Options of the reader with which the map was read
+	 * @throws IOException
+	 * 			when there are any errors with the output
+	 */
+	public static void write(OSMMap map, String fileName, String cacheName, OSMMapReader.Options options) throws IOException {
+		File source = new File(fileName);
+		File cache = new File(cacheName).getAbsoluteFile();
+		File temporary = File.createTempFile(cache.getName(), ".tmp", cache.getParentFile());
+		try {
+			try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16))){
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+				output.writeLong(source.length());
+				output.writeLong(source.lastModified());
+				output.writeLong(fingerprint(options));
+				new Writer(map, output).write();
+			}
+			Files.move(temporary.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			temporary.delete();
+		}
+	}
+
+	/**
+	 * Parses a file and writes its cache
+	 */
+	private static OSMMap create(String fileName, boolean unGZip, String cacheName, OSMMapReader.Options options) throws IOException, SAXException {
+		OSMMap map = fileName.endsWith(".pbf") ? OSMPBFReader.readPBFFile(fileName, options) : OSMMapReader.readOSMFile(fileName, unGZip, options);
+		write(map, fileName, cacheName, options);
+		return map;
+	}
+
+	/**
+	 * Passes the entities of a cache to a handler, in the order in which they were written
+	 * @param cacheName
+	 * 			Name of the cache
+	 * @param handler
+	 * 			The handler receiving the entities
+	 * @throws IOException
+	 * 			when there are any errors with the input, or when the cache is malformed
+	 */
+	static void replay(String cacheName, OSMHandler handler) throws IOException {
+		try(RandomAccessFile file = new RandomAccessFile(cacheName, "r")){
+			MappedInput input = new MappedInput(file.getChannel());
+			input.ensure(HEADER_SIZE);
+			if(input.getInt()!=MAGIC || input.getInt()!=VERSION) throw new IOException("Not a cache of an OSMMap: "+cacheName);
+			input.getLong();
+			input.getLong();
+			input.getLong();
+
+			String[] strings = new String[input.count()];
+			byte[] bytes = new byte[256];
+			for(int i=0; i<strings.length; i++){
+				int length = input.count();
+				if(length>bytes.length) bytes = new byte[length];
+				input.get(bytes, length);
+				strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+			}
+
+			for(int i=input.count(); i>0; i--){
+				input.ensure(24);
+				handler.startNode(input.getLong(), input.getDouble(), input.getDouble());
+				tags(input, strings, handler);
+				handler.endEntity();
+			}
+			for(int i=input.count(); i>0; i--){
+				input.ensure(8);
+				handler.startWay(input.getLong());
+				for(int j=input.count(); j>0; j--){
+					input.ensure(8);
+					handler.nodeReference(input.getLong());
+				}
+				tags(input, strings, handler);
+				handler.endEntity();
+			}
+			for(int i=input.count(); i>0; i--){
+				input.ensure(8);
+				handler.startRelation(input.getLong());
+				for(int j=input.count(); j>0; j--){
+					input.ensure(13);
+					Type type = TYPES[input.getByte()];
+					handler.member(type, input.getLong(), string(strings, input.getInt()));
+				}
+				tags(input, strings, handler);
+				handler.endEntity();
+			}
+		} catch(ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Malformed cache of an OSMMap: "+cacheName, e);
+		}
+	}
+
+	/**
+	 * Gives a fingerprint of the options changing the content of a map, that is the kept keys
+	 * and the rounding of the coordinates to fixed-point
+	 * @return
+	 * 			0 when all the keys are kept with exact coordinates, a hash of the options otherwise
+	 */
+	private static long fingerprint(OSMMapReader.Options options){
+		if(options.keptKeys()==null && !options.fixedPointCoordinates()) return 0;
+		List<String> keys = new ArrayList<String>();
+		if(options.keptKeys()!=null) keys.addAll(options.keptKeys());
+		Collections.sort(keys);
+		/*
+		 * 64 bits FNV-1a hash of the keys, separated by 0, and of the fixed-point flag
+		 */
+		long hash = 0xcbf29ce484222325L;
+		for(String key : keys){
+			for(byte b : key.getBytes(StandardCharsets.UTF_8)) hash = (hash ^ (b & 0xFF))*0x100000001b3L;
+			hash *= 0x100000001b3L;
+		}
+		if(options.keptKeys()==null) hash = (hash ^ 1)*0x100000001b3L;
+		if(options.fixedPointCoordinates()) hash = (hash ^ 2)*0x100000001b3L;
+		return hash==0 ? 1 : hash;
+	}
+
+	private static void tags(MappedInput input, String[] strings, OSMHandler handler) throws IOException {
+		for(int i=input.count(); i>0; i--){
+			input.ensure(8);
+			handler.tag(string(strings, input.getInt()), string(strings, input.getInt()));
+		}
+	}
+
+	private static String string(String[] strings, int index){ return index<0 ? null : strings[index]; }
+
+	/**
+	 * Writes the entities of a map, the nodes being written once even when they belong to several ways
+	 */
+	private static final class Writer {
+
+		private final OSMMap map;
+		private final DataOutputStream output;
+		private final HashMap<String, Integer> stringIndices = new HashMap<String, Integer>();
+		private final List<String> strings = new ArrayList<String>();
+
+		Writer(OSMMap map, DataOutputStream output){
+			this.map = map;
+			this.output = output;
+		}
+
+		void write() throws IOException {
+			/*
+			 * The strings are interned by a first walk over the map, so that their table precedes the entities
+			 */
+			LongIndexMap writtenNodes = new LongIndexMap();
+			List<OSMNode> nodes = new ArrayList<OSMNode>();
+			for(OSMWay way : map.ways()){
+				intern(way.attributes());
+				for(OSMNode node : way.nodes()){
+					if(writtenNodes.get(node.id())>=0) continue;
+					writtenNodes.put(node.id(), 0);
+					nodes.add(node);
+					intern(node.attributes());
+				}
+			}
+			for(OSMRelation relation : map.relations()){
+				intern(relation.attributes());
+				for(Member member : relation.members()) intern(member.role());
+			}
+
+			output.writeInt(strings.size());
+			for(String string : strings){
+				byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+				output.writeInt(bytes.length);
+				output.write(bytes);
+			}
+
+			output.writeInt(nodes.size());
+			for(OSMNode node : nodes){
+				output.writeLong(node.id());
+				output.writeDouble(node.position().longitude());
+				output.writeDouble(node.position().latitude());
+				tags(node.attributes());
+			}
+			output.writeInt(map.ways().size());
+			for(OSMWay way : map.ways()){
+				output.writeLong(way.id());
+				output.writeInt(way.nodesCount());
+				for(OSMNode node : way.nodes()) output.writeLong(node.id());
+				tags(way.attributes());
+			}
+			output.writeInt(map.relations().size());
+			for(OSMRelation relation : map.relations()){
+				output.writeLong(relation.id());
+				output.writeInt(relation.members().size());
+				for(Member member : relation.members()){
+					output.writeByte(member.type().ordinal());
+					output.writeLong(member.member().id());
+					output.writeInt(index(member.role()));
+				}
+				tags(relation.attributes());
+			}
+		}
+
+		private void intern(Attributes attributes){
+			for(String key : attributes.keySet()){
+				intern(key);
+				intern(attributes.get(key));
+			}
+		}
+
+		private void intern(String string){
+			if(string!=null && !stringIndices.containsKey(string)){
+				stringIndices.put(string, strings.size());
+				strings.add(string);
+			}
+		}
+
+		private int index(String string){ return string==null ? -1 : stringIndices.get(string); }
+
+		private void tags(Attributes attributes) throws IOException {
+			output.writeInt(attributes.keySet().size());
+			for(String key : attributes.keySet()){
+				output.writeInt(index(key));
+				output.writeInt(index(attributes.get(key)));
+			}
+		}
+	}
+
+	/**
+	 * Reads a file through a window mapped in memory, moved forward as the file is read, so that
+	 * files larger than the two gigabytes of a single mapping can be read
+	 */
+	private static final class MappedInput {
+
+		private final FileChannel channel;
+		private final long size;
+		private MappedByteBuffer window;
+		private long windowStart;
+
+		MappedInput(FileChannel channel) throws IOException {
+			this.channel = channel;
+			this.size = channel.size();
+			map(0, 0);
+		}
+
+		/**
+		 * Makes sure that a given number of bytes can be read from the window
+		 * @throws IOException
+		 * 			when the file ends before these bytes
+		 */
+		void ensure(int length) throws IOException {
+			if(window.remaining()>=length) return;
+			long position = windowStart+window.position();
+			if(position+length>size) throw new IOException("Truncated cache of an OSMMap");
+			map(position, length);
+		}
+
+		private void map(long position, int length) throws IOException {
+			windowStart = position;
+			window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size-position, Math.max(WINDOW_SIZE, length)));
+		}
+
+		int count() throws IOException {
+			ensure(4);
+			int count = window.getInt();
+			if(count<0) throw new IOException("Malformed cache of an OSMMap");
+			return count;
+		}
+
+		void get(byte[] bytes, int length) throws IOException {
+			ensure(length);
+			window.get(bytes, 0, length);
+		}
+
+		byte getByte(){ return window.get(); }
+
+		int getInt(){ return window.getInt(); }
+
+		long getLong(){ return window.getLong(); }
+
+		double getDouble(){ return window.getDouble(); }
+	}
+}
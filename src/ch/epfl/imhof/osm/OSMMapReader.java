@@ -1,8 +1,13 @@
 package ch.epfl.imhof.osm;
 
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.zip.GZIPInputStream;
 
 import org.xml.sax.Attributes;
@@ -12,7 +17,11 @@ import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
 import org.xml.sax.helpers.XMLReaderFactory;
 
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Map;
 import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
 import ch.epfl.imhof.osm.OSMRelation.Member.Type;
 
 /**
@@ -42,115 +51,536 @@ public final class OSMMapReader {
 	 * 			when there are any errors with parsing the XML file
 	 */
 	public static OSMMap readOSMFile(String fileName, boolean unGZip) throws IOException, SAXException {
-		OSMMap.Builder mapBuilder = new OSMMap.Builder();
-		try( BufferedInputStream i = unGZip ? new BufferedInputStream(new GZIPInputStream(new FileInputStream(fileName))) : new BufferedInputStream(new FileInputStream(fileName)) ){
-			XMLReader r = XMLReaderFactory.createXMLReader();
-		   	r.setContentHandler(new DefaultHandler() {
-		   		
-				private OSMWay.Builder wayBuilder;
-			   	private OSMNode.Builder nodeBuilder;
-			   	private OSMRelation.Builder relationBuilder;
-				private PointGeo position;
-				private long id;
-			   	private String key;
-			   	private String value;
-			   	private String ref;
-			   	private Type type;
-			   	private String role;
-    			
-			   	@Override
-		    	public void startElement(String uri,
-		                                 String lName,
-		                                 String qName,
-		                                 Attributes atts)
-		                              		   throws SAXException {
-		    		switch(qName){
-		    			case "node": 
-			    			id = Long.parseLong(atts.getValue("id"));
-			    			position = new PointGeo(Math.toRadians(Double.parseDouble(atts.getValue("lon"))), Math.toRadians(Double.parseDouble(atts.getValue("lat"))));
-					       	nodeBuilder = new OSMNode.Builder(id, position);
-					       	break;
-			        	
-			    		case "way":
-			    			id = Long.parseLong(atts.getValue("id"));
-			    			wayBuilder = new OSMWay.Builder(id);
-			    			break;
-			    			
-			    		case "relation":
-			    			id = Long.parseLong(atts.getValue("id"));
-			    			relationBuilder = new OSMRelation.Builder(id);
-			    			break;
-			    				
-			    		case "nd":
-			    			id = Long.parseLong(atts.getValue("ref"));
-			        		break;
-			        			
-			    		case "tag":
-			    			key = atts.getValue("k");
-			    			value = atts.getValue("v");
-			    			
-			    			break;
-			    		
-			    		case "member":
-			    			type = Type.valueOf(atts.getValue("type").toUpperCase());
-			        		ref = atts.getValue("ref");
-			    			role = atts.getValue("role");
-			    			break;
-			    			
-			    			
-		    		}
-
-			   	}
-
-		        @Override
-		        public void endElement(String uri,
-		                               String lName,
-		                               String qName) {
-		        	switch(qName){
-		        		case "node": 
-		    				mapBuilder.addNode(nodeBuilder.build());
-		    				nodeBuilder = null;
-				        	break;
-				        	
-		    			case "way":
-		    				if(!wayBuilder.isIncomplete()){
-		    					mapBuilder.addWay(wayBuilder.build());
-		    				}
-		    				wayBuilder = null; 	
-		    				break;		
-		    				
-		    			case "relation":
-		    				if(!relationBuilder.isIncomplete()){
-		    					mapBuilder.addRelation(relationBuilder.build());
-		    				}
-		    				relationBuilder = null;
-		    				break;
+		return readOSMFile(fileName, unGZip, Options.DEFAULT);
+	}
+	
+	/**
+	 * Reads data from a file and creates a new map using it, following the given options
+	 * @param fileName
+	 * 			Name of the file from which the data will be read
+	 * @param unGZip
+	 * 			Boolean stating if the given file is a GZIP file
+	 * @param options
+	 * 			Options of the reader, such as the backend parsing the XML
+	 * @return
+	 * 			A new Map with the data from a given file
+	 * @throws IOException
+	 * 			when there are any errors with the input
+	 * @throws SAXException
+	 * 			when there are any errors with parsing the XML file
+	 */
+	public static OSMMap readOSMFile(String fileName, boolean unGZip, Options options) throws IOException, SAXException {
+		OSMMapAssembler assembler = assembler(options);
+		parse(fileName, unGZip, options, assembler);
+		return assembler.build();
+	}
+	
+	/**
+	 * Reads the entities of a file touching a bounding box and creates a new map using them.
+	 * The nodes outside of the box are dropped while the file is read, and only the ways having
+	 * a node in the box, and the relations having such a way as member, are built. The file is
+	 * read two or three times, but the entities outside of the box are never materialized
+	 * @param fileName
+	 * 			Name of the file from which the data will be read
+	 * @param unGZip
+	 * 			Boolean stating if the given file is a GZIP file
+	 * @param bottomLeft
+	 * 			The bottom left corner of the box
+	 * @param topRight
+	 * 			The top right corner of the box
+	 * @param margin
+	 * 			The distance by which the box is extended on each side, in meters
+	 * @param options
+	 * 			Options of the reader, such as the backend parsing the XML or the clipping of the ways
+	 * @return
+	 * 			A new Map with the data of the given file touching the box
+	 * @throws IOException
+	 * 			when there are any errors with the input
+	 * @throws SAXException
+	 * 			when there are any errors with parsing the XML file
+	 * @throws IllegalArgumentException
+	 * 			when the corners of the box are not ordered, or when the margin is negative
+	 */
+	public static OSMMap readOSMFile(String fileName, boolean unGZip, PointGeo bottomLeft, PointGeo topRight, double margin, Options options) throws IOException, SAXException, IllegalArgumentException {
+		OSMBoundingBoxFilter filter = new OSMBoundingBoxFilter(bottomLeft, topRight, margin, options.clipWays());
+		return filter.read(handler -> parse(fileName, unGZip, options, handler), assembler(options));
+	}
+	
+	/**
+	 * Reads a file and transforms its entities as they're completed, without building an OSMMap. Only the nodes
+	 * and the ways, as the possible members of the next relations, are kept while the file is read, and the
+	 * features of the Map are in the order of the ones of the transformation of the OSMMap of the file
+	 * @param fileName
+	 * 			Name of the file from which the data will be read
+	 * @param unGZip
+	 * 			Boolean stating if the given file is a GZIP file
+	 * @param options
+	 * 			Options of the reader, such as the backend parsing the XML
+	 * @param transformer
+	 * 			The transformer of the ways and relations
+	 * @return
+	 * 			A new Map of the features of the given file
+	 * @throws IOException
+	 * 			when there are any errors with the input
+	 * @throws SAXException
+	 * 			when there are any errors with parsing the XML file
+	 */
+	public static Map readMap(String fileName, boolean unGZip, Options options, OSMToGeoTransformer transformer) throws IOException, SAXException {
+		Map.Builder mapBuilder = new Map.Builder();
+		OSMMapAssembler assembler = assembler(options, transformer, mapBuilder);
+		parse(fileName, unGZip, options, assembler);
+		assembler.close();
+		return mapBuilder.build();
+	}
+	
+	/**
+	 * Reads the entities of a file touching a bounding box and transforms them as they're completed, without
+	 * building an OSMMap, reading the file as readOSMFile does
+	 * @param fileName
+	 * 			Name of the file from which the data will be read
+	 * @param unGZip
+	 * 			Boolean stating if the given file is a GZIP file
+	 * @param bottomLeft
+	 * 			The bottom left corner of the box
+	 * @param topRight
+	 * 			The top right corner of the box
+	 * @param margin
+	 * 			The distance by which the box is extended on each side, in meters
+	 * @param options
+	 * 			Options of the reader, such as the backend parsing the XML or the clipping of the ways
+	 * @param transformer
+	 * 			The transformer of the ways and relations
+	 * @return
+	 * 			A new Map of the features of the given file touching the box
+	 * @throws IOException
+	 * 			when there are any errors with the input
+	 * @throws SAXException
+	 * 			when there are any errors with parsing the XML file
+	 * @throws IllegalArgumentException
+	 * 			when the corners of the box are not ordered, or when the margin is negative
+	 */
+	public static Map readMap(String fileName, boolean unGZip, PointGeo bottomLeft, PointGeo topRight, double margin, Options options, OSMToGeoTransformer transformer) throws IOException, SAXException, IllegalArgumentException {
+		OSMBoundingBoxFilter filter = new OSMBoundingBoxFilter(bottomLeft, topRight, margin, options.clipWays());
+		Map.Builder mapBuilder = new Map.Builder();
+		filter.read(handler -> parse(fileName, unGZip, options, handler), assembler(options, transformer, mapBuilder));
+		return mapBuilder.build();
+	}
+	
+	/**
+	 * Parses a file, passing its entities to a handler
+	 * @param fileName
+	 * 			Name of the file
+	 * @param unGZip
+	 * 			Boolean stating if the given file is a GZIP file
+	 * @param options
+	 * 			Options of the reader
+	 * @param handler
+	 * 			The handler receiving the entities
+	 */
+	static void parse(String fileName, boolean unGZip, Options options, OSMHandler handler) throws IOException, SAXException {
+		if(!unGZip && options.backend()==Backend.TOKENIZER && options.parsingThreads()>1){
+			OSMXMLChunkReader.read(fileName, handler, options.keptKeys(), options.parsingThreads());
+			return;
+		}
+		try( InputStream i = input(fileName, unGZip, options) ){
+			switch(options.backend()){
+				case TOKENIZER: new OSMXMLTokenizer(i, handler, options.keptKeys()).parse(); break;
+				case SAX: parseWithSAX(i, handler); break;
+			}
+		}
+	}
+	
+	/**
+	 * Opens the input of a file, decompressing it if needed
+	 * @param fileName
+	 * 			Name of the file
+	 * @param unGZip
+	 * 			Boolean stating if the given file is a GZIP file
+	 * @param options
+	 * 			Options of the reader, stating how the file is decompressed
+	 * @return
+	 * 			A buffered input stream giving the uncompressed content of the file
+	 */
+	private static InputStream input(String fileName, boolean unGZip, Options options) throws IOException {
+		if(unGZip && options.pipelinedInflation()) return new PipelinedInflaterInputStream(new FileInputStream(fileName), options.pipelineBufferSize(), options.pipelineBufferCount(),
+				options.pipelineStatistics()!=null ? options.pipelineStatistics() : new PipelineStatistics());
+		return unGZip ? new BufferedInputStream(new GZIPInputStream(new FileInputStream(fileName))) : new BufferedInputStream(new FileInputStream(fileName));
+	}
+	
+	/**
+	 * Creates the assembler of the map read with given options
+	 * @param options
+	 * 			Options of the reader
+	 * @return
+	 * 			A new assembler of an OSMMap
+	 */
+	static OSMMapAssembler assembler(Options options){
+		return new OSMMapAssembler(mapBuilder(options), options.keptKeys(), options.nodeMemoryBudget(), options.nodeStoreDirectory());
+	}
+	
+	/**
+	 * Creates the assembler passing the entities read with given options to a transformer as they're completed
+	 * @param options
+	 * 			Options of the reader
+	 * @param transformer
+	 * 			The transformer of the ways and relations
+	 * @param features
+	 * 			The builder in which the features are added
+	 * @return
+	 * 			A new assembler in streaming mode
+	 */
+	private static OSMMapAssembler assembler(Options options, OSMToGeoTransformer transformer, Map.Builder features){
+		return new OSMMapAssembler(mapBuilder(options), options.keptKeys(), options.nodeMemoryBudget(), options.nodeStoreDirectory(),
+			way -> {
+				Attributed<Polygon> polygon = transformer.wayPolygon(way);
+				if(polygon!=null) features.addPolygon(polygon);
+				Attributed<PolyLine> polyLine = transformer.wayPolyLine(way);
+				if(polyLine!=null) features.addPolyLine(polyLine);
+			},
+			relation -> {
+				for(Attributed<Polygon> polygon : transformer.relationPolygons(relation)) features.addPolygon(polygon);
+			});
+	}
+	
+	private static OSMMap.Builder mapBuilder(Options options){
+		boolean table = options.columnarNodes() || options.fixedPointCoordinates();
+		return table ? new OSMMap.Builder(new OSMNodeTable(options.fixedPointCoordinates())) : new OSMMap.Builder();
+	}
+	
+	/**
+	 * Parses an XML input with a SAX parser, passing the entities to a handler
+	 * @param i
+	 * 			The input to be parsed
+	 * @param handler
+	 * 			The handler receiving the entities
+	 */
+	private static void parseWithSAX(InputStream i, OSMHandler handler) throws IOException, SAXException {
+		XMLReader r = XMLReaderFactory.createXMLReader();
+	   	r.setContentHandler(new DefaultHandler() {
+	   		
+	   		private boolean deleteSection;
+	   		
+		   	@Override
+	    	public void startElement(String uri,
+	                                 String lName,
+	                                 String qName,
+	                                 Attributes atts)
+	                              		   throws SAXException {
+	    		switch(qName){
+	    			case "node": 
+	    				if(deleteSection && (atts.getValue("lon")==null || atts.getValue("lat")==null)) handler.startNode(Long.parseLong(atts.getValue("id")), Double.NaN, Double.NaN);
+	    				else handler.startNode(Long.parseLong(atts.getValue("id")), Math.toRadians(Double.parseDouble(atts.getValue("lon"))), Math.toRadians(Double.parseDouble(atts.getValue("lat"))));
+				       	break;
+		        	
+		    		case "way":
+		    			handler.startWay(Long.parseLong(atts.getValue("id")));
+		    			break;
+		    			
+		    		case "relation":
+		    			handler.startRelation(Long.parseLong(atts.getValue("id")));
+		    			break;
 		    				
-		    			case "nd":
-		    				if(mapBuilder.nodeForId(id)!=null){
-		    					wayBuilder.addNode(mapBuilder.nodeForId(id));
-		    				} else { wayBuilder.setIncomplete(); }
-		        			break;
+		    		case "nd":
+		    			handler.nodeReference(Long.parseLong(atts.getValue("ref")));
+		        		break;
 		        			
-		    			case "tag":
-		    				if(nodeBuilder!=null) nodeBuilder.setAttribute(key,value);
-		    				else if(wayBuilder!=null) wayBuilder.setAttribute(key, value);
-		    				else if(relationBuilder!=null) relationBuilder.setAttribute(key, value);
-		    				break;
-		    				
-		    			case "member":
-		    				if(mapBuilder.wayForId(Long.parseLong(ref))!=null){	
-		    					relationBuilder.addMember(type, role, mapBuilder.wayForId(Long.parseLong(ref)));
-		    				} else {
-		    					relationBuilder.setIncomplete();
-		    				}
-		    				break;
-	    				} 
+		    		case "tag":
+		    			handler.tag(atts.getValue("k"), atts.getValue("v"));
+		    			break;
+		    		
+		    		case "member":
+		    			handler.member(Type.valueOf(atts.getValue("type").toUpperCase()), Long.parseLong(atts.getValue("ref")), atts.getValue("role"));
+		    			break;
+		    			
+		    		case "create":
+		    		case "modify":
+		    		case "delete":
+		    			deleteSection = qName.equals("delete");
+		    			handler.startChangeSection(OSMHandler.ChangeAction.valueOf(qName.toUpperCase()));
+		    			break;
+	    		}
+		   	}
 
-		        }
-			  });
-		      r.parse(new InputSource(i));
-			} 
-		return mapBuilder.build();
+	        @Override
+	        public void endElement(String uri,
+	                               String lName,
+	                               String qName) {
+	        	switch(qName){
+	        		case "node": 
+	    			case "way":
+	    			case "relation":
+	    				handler.endEntity();
+	    				break;
+    			} 
+	        }
+		});
+		r.parse(new InputSource(i));
+	}
+	
+	/**
+	 * Represents the backends able to parse an OpenStreetMap XML file
+	 */
+	public enum Backend{ 
+		/** The SAX parser of the platform */
+		SAX, 
+		/** A tokenizer dedicated to OpenStreetMap files, decoding numbers without intermediate Strings */
+		TOKENIZER 
+	}
+	
+	/**
+	 * Represents the options of a reader of an OpenStreetMap
+	 *
+	 * @author Michal Piotr Pleskowicz (251034)
+	 * @author Rafael Ulises Luzius Pizarro Solar (250976)
+	 */
+	public static final class Options{
+		
+		/**
+		 * The options used when none are given, reading the file with the SAX parser
+		 */
+		public static final Options DEFAULT = new Options.Builder().build();
+		
+		private final Backend backend;
+		private final boolean columnarNodes;
+		private final boolean pipelinedInflation;
+		private final int pipelineBufferSize;
+		private final int pipelineBufferCount;
+		private final PipelineStatistics pipelineStatistics;
+		private final boolean clipWays;
+		private final Set<String> keptKeys;
+		private final boolean fixedPointCoordinates;
+		private final long nodeMemoryBudget;
+		private final File nodeStoreDirectory;
+		private final int parsingThreads;
+		
+		/**
+		 * Creates the options of a reader from the values set in a builder
+		 * @param builder
+		 * 			The builder of the options
+		 */
+		private Options(Builder builder){
+			this.backend = builder.backend;
+			this.columnarNodes = builder.columnarNodes;
+			this.pipelinedInflation = builder.pipelinedInflation;
+			this.pipelineBufferSize = builder.pipelineBufferSize;
+			this.pipelineBufferCount = builder.pipelineBufferCount;
+			this.pipelineStatistics = builder.pipelineStatistics;
+			this.clipWays = builder.clipWays;
+			this.keptKeys = builder.keptKeys;
+			this.fixedPointCoordinates = builder.fixedPointCoordinates;
+			this.nodeMemoryBudget = builder.nodeMemoryBudget;
+			this.nodeStoreDirectory = builder.nodeStoreDirectory;
+			this.parsingThreads = builder.parsingThreads;
+		}
+		
+		/**
+		 * Gives the backend parsing the XML file
+		 * @return
+		 * 			The backend parsing the XML file
+		 */
+		public Backend backend(){ return backend; }
+		
+		/**
+		 * Checks whether the nodes are stored in a columnar OSMNodeTable, the ways referring to
+		 * the nodes by their index in the table instead of holding OSMNodes
+		 * @return
+		 * 			True when the nodes are stored in a node table, false otherwise
+		 */
+		public boolean columnarNodes(){ return columnarNodes; }
+		
+		/**
+		 * Checks whether a GZIP file is decompressed by a separate thread, filling a ring of
+		 * buffers while the XML is parsed
+		 * @return
+		 * 			True when the decompression is pipelined, false otherwise
+		 */
+		public boolean pipelinedInflation(){ return pipelinedInflation; }
+		
+		/**
+		 * Gives the size of each buffer of the decompression pipeline
+		 * @return
+		 * 			The size of a buffer, in bytes
+		 */
+		public int pipelineBufferSize(){ return pipelineBufferSize; }
+		
+		/**
+		 * Gives the number of buffers of the decompression pipeline
+		 * @return
+		 * 			The number of buffers
+		 */
+		public int pipelineBufferCount(){ return pipelineBufferCount; }
+		
+		/**
+		 * Gives the statistics filled by the decompression pipeline, added to by every reading using these options
+		 * @return
+		 * 			The statistics of the pipeline, or null when each reading keeps its own, discarded
+		 */
+		public PipelineStatistics pipelineStatistics(){ return pipelineStatistics; }
+		
+		/**
+		 * Checks whether the open ways read with a bounding box are cut down to their part in the box
+		 * @return
+		 * 			True when the ways are clipped, false otherwise
+		 */
+		public boolean clipWays(){ return clipWays; }
+		
+		/**
+		 * Gives the keys of the tags stored in the map, the other tags being skipped while the file is read
+		 * @return
+		 * 			The unmodifiable set of the kept keys, or null when all the tags are kept
+		 */
+		public Set<String> keptKeys(){ return keptKeys; }
+		
+		/**
+		 * Checks whether the coordinates of the nodes are stored as fixed-point integers in a node table
+		 * @return
+		 * 			True when the coordinates are stored as integers, false otherwise
+		 */
+		public boolean fixedPointCoordinates(){ return fixedPointCoordinates; }
+		
+		/**
+		 * Gives the size of the nodes in the heap above which they are moved to a memory-mapped OSMNodeStore
+		 * @return
+		 * 			The memory budget of the nodes, in bytes
+		 */
+		public long nodeMemoryBudget(){ return nodeMemoryBudget; }
+		
+		/**
+		 * Gives the directory of the file of the node store
+		 * @return
+		 * 			The directory of the file, or null for the default temporary directory
+		 */
+		public File nodeStoreDirectory(){ return nodeStoreDirectory; }
+		
+		/**
+		 * Gives the number of threads tokenizing an uncompressed file with the TOKENIZER backend
+		 * @return
+		 * 			The number of threads, 1 when the file is read by a single tokenizer
+		 */
+		public int parsingThreads(){ return parsingThreads; }
+		
+		public static final class Builder{
+			
+			private Backend backend = Backend.SAX;
+			private boolean columnarNodes = false;
+			private boolean pipelinedInflation = false;
+			private int pipelineBufferSize = 1 << 20;
+			private int pipelineBufferCount = 8;
+			private PipelineStatistics pipelineStatistics = null;
+			private boolean clipWays = false;
+			private Set<String> keptKeys = null;
+			private boolean fixedPointCoordinates = false;
+			private long nodeMemoryBudget = Long.MAX_VALUE;
+			private File nodeStoreDirectory = null;
+			private int parsingThreads = 1;
+			
+			/**
+			 * Sets the backend parsing the XML file
+			 * @param backend
+			 * 			The backend parsing the XML file
+			 */
+			public void setBackend(Backend backend){ this.backend = backend; }
+			
+			/**
+			 * Sets whether the nodes are stored in a columnar OSMNodeTable
+			 * @param columnarNodes
+			 * 			Boolean stating if the nodes are stored in a node table
+			 */
+			public void setColumnarNodes(boolean columnarNodes){ this.columnarNodes = columnarNodes; }
+			
+			/**
+			 * Sets whether a GZIP file is decompressed by a separate thread
+			 * @param pipelinedInflation
+			 * 			Boolean stating if the decompression is pipelined
+			 */
+			public void setPipelinedInflation(boolean pipelinedInflation){ this.pipelinedInflation = pipelinedInflation; }
+			
+			/**
+			 * Sets the size and the number of the buffers of the decompression pipeline
+			 * @param bufferSize
+			 * 			The size of a buffer, in bytes
+			 * @param bufferCount
+			 * 			The number of buffers
+			 * @throws IllegalArgumentException
+			 * 			When the size or the number of buffers are not strictly positive
+			 */
+			public void setPipelineBuffers(int bufferSize, int bufferCount) throws IllegalArgumentException{
+				if(bufferSize<=0 || bufferCount<=0) throw new IllegalArgumentException();
+				this.pipelineBufferSize = bufferSize;
+				this.pipelineBufferCount = bufferCount;
+			}
+			
+			/**
+			 * Sets the statistics filled by the decompression pipeline, which are only kept when they're set. The readings
+			 * using the same options add to the same statistics, so they should be set for a single reading at a time
+			 * @param pipelineStatistics
+			 * 			The statistics of the pipeline, consulted once the file is read, or null not to keep them
+			 */
+			public void setPipelineStatistics(PipelineStatistics pipelineStatistics){ this.pipelineStatistics = pipelineStatistics; }
+			
+			/**
+			 * Sets whether the open ways read with a bounding box are cut down to their part in the box,
+			 * keeping one node outside of the box at each end. The ways of relations are never clipped
+			 * @param clipWays
+			 * 			Boolean stating if the ways are clipped
+			 */
+			public void setClipWays(boolean clipWays){ this.clipWays = clipWays; }
+			
+			/**
+			 * Sets the keys of the tags stored in the map, such as the ones of OSMToGeoTransformer.attributeKeys()
+			 * @param keptKeys
+			 * 			The keys of the tags kept, or null to keep all the tags
+			 */
+			public void setKeptKeys(Set<String> keptKeys){
+				this.keptKeys = keptKeys==null ? null : Collections.unmodifiableSet(new HashSet<String>(keptKeys));
+			}
+			
+			/**
+			 * Sets whether the coordinates of the nodes are stored as integers counting 10^-7 degrees,
+			 * which halves their memory without loss for coordinates read from OpenStreetMap. The
+			 * nodes are then stored in a node table, whatever the value set by setColumnarNodes
+			 * @param fixedPointCoordinates
+			 * 			Boolean stating if the coordinates are stored as integers
+			 */
+			public void setFixedPointCoordinates(boolean fixedPointCoordinates){ this.fixedPointCoordinates = fixedPointCoordinates; }
+			
+			/**
+			 * Sets the size of the nodes in the heap above which they are moved to a memory-mapped
+			 * OSMNodeStore, the ways then referring to the nodes of the store. The nodes are only
+			 * moved while no way was read, as in the files listing the nodes first
+			 * @param nodeMemoryBudget
+			 * 			The memory budget of the nodes, in bytes, Long.MAX_VALUE to always keep them in the heap
+			 * @param nodeStoreDirectory
+			 * 			The directory of the file of the node store, or null for the default temporary directory
+			 * @throws IllegalArgumentException
+			 * 			When the budget is negative
+			 */
+			public void setNodeMemoryBudget(long nodeMemoryBudget, File nodeStoreDirectory) throws IllegalArgumentException{
+				if(nodeMemoryBudget<0) throw new IllegalArgumentException();
+				this.nodeMemoryBudget = nodeMemoryBudget;
+				this.nodeStoreDirectory = nodeStoreDirectory;
+			}
+			
+			/**
+			 * Sets the number of threads tokenizing an uncompressed file with the TOKENIZER backend.
+			 * The file is cut into chunks at the start of its entities, which are tokenized in parallel
+			 * and passed to the map in the order of the file, so the map read is the same
+			 * @param parsingThreads
+			 * 			The number of threads, such as Runtime.getRuntime().availableProcessors()
+			 * @throws IllegalArgumentException
+			 * 			When the number of threads is not strictly positive
+			 */
+			public void setParsingThreads(int parsingThreads) throws IllegalArgumentException{
+				if(parsingThreads<=0) throw new IllegalArgumentException();
+				this.parsingThreads = parsingThreads;
+			}
+			
+			/**
+			 * Builds the options of a reader
+			 * @return
+			 * 			New options of a reader
+			 */
+			public Options build(){ return new Options(this); }
+		}
 	}
 }
\ No newline at end of file
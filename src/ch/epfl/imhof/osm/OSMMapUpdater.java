@@ -0,0 +1,465 @@
+package ch.epfl.imhof.osm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.xml.sax.SAXException;
+
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.osm.OSMRelation.Member;
+import ch.epfl.imhof.osm.OSMRelation.Member.Type;
+
+/**
+ * Keeps an OSMMap and the Map it is transformed to up to date with osmChange files. The ways and
+ * relations are stored with the features they were transformed to, and an osmChange only
+ * transforms again the ways it creates, modifies or deletes, the ways having a node it moves,
+ * and the relations having one of these ways as member.
+ * The nodes are stored in a node table shared by the ways of the OSMMaps given by the updater,
+ * so a map given before a change sees the nodes moved by the change. A way or a relation changed
+ * to refer to a node or a way the updater doesn't have keeps its previous version, and is counted
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+public final class OSMMapUpdater {
+
+	private final OSMToGeoTransformer transformer;
+	private final OSMNodeTable nodeTable = new OSMNodeTable();
+
+	private final LongIndexMap wayIndices = new LongIndexMap();
+	private final List<OSMWay> ways = new ArrayList<OSMWay>();
+	private final List<Attributed<PolyLine>> wayPolyLines = new ArrayList<Attributed<PolyLine>>();
+	private final List<Attributed<Polygon>> wayPolygons = new ArrayList<Attributed<Polygon>>();
+
+	private final LongIndexMap relationIndices = new LongIndexMap();
+	private final List<OSMRelation> relations = new ArrayList<OSMRelation>();
+	private final List<List<Attributed<Polygon>>> relationPolygons = new ArrayList<List<Attributed<Polygon>>>();
+
+	private final Links nodeWays = new Links();
+	private final Links wayRelations = new Links();
+	private int unresolvedChanges;
+
+	/**
+	 * Creates an updater of a map, transforming all its ways and relations
+	 * @param map
+	 * 			The OSMMap to be kept up to date
+	 * @param transformer
+	 * 			The transformer of the ways and relations to the features of a Map
+	 */
+	public OSMMapUpdater(OSMMap map, OSMToGeoTransformer transformer){
+		this.transformer = transformer;
+		for(OSMWay way : map.ways()){
+			int[] nodeIndices = new int[way.nodesCount()];
+			for(int i=0; i<nodeIndices.length; i++){
+				OSMNode node = way.nodes().get(i);
+				int index = nodeTable.indexOf(node.id());
+				nodeIndices[i] = index>=0 ? index : nodeTable.add(node.id(), node.position().longitude(), node.position().latitude(), node.attributes());
+			}
+			int slot = putWay(way.id(), new OSMWay(way.id(), nodeTable, nodeIndices, way.attributes()));
+			for(int index : nodeIndices) nodeWays.add(index, slot);
+			transformWay(slot);
+		}
+		for(OSMRelation relation : map.relations()){
+			int slot = putRelation(relation.id(), resolve(relation.id(), relation.members(), relation.attributes()));
+			transformRelation(slot);
+		}
+	}
+
+	/**
+	 * Applies the changes of an osmChange file to the map, and transforms again the affected ways and relations
+	 * @param fileName
+	 * 			Name of the osmChange file
+	 * @param unGZip
+	 * 			Boolean stating if the given file is a GZIP file
+	 * @param options
+	 * 			Options of the reader, such as the backend parsing the XML or the kept keys
+	 * @return
+	 * 			The number of ways and relations transformed again
+	 * @throws IOException
+	 * 			when there are any errors with the input
+	 * @throws SAXException
+	 * 			when there are any errors with parsing the XML file
+	 */
+	public int applyChange(String fileName, boolean unGZip, OSMMapReader.Options options) throws IOException, SAXException {
+		/*
+		 * The attributes of each change have their own dictionary, freed once no entity of the change is left
+		 */
+		Attributes.newDictionary();
+		ChangeCollector change = new ChangeCollector(options.keptKeys());
+		OSMMapReader.parse(fileName, unGZip, options, change);
+		return apply(change);
+	}
+
+	/**
+	 * Gives the number of created or modified ways and relations skipped so far because they refer to nodes or ways
+	 * the updater doesn't have, such as the nodes of no way or the ways left out of a bounding box: an osmChange only
+	 * gives the entities it changes, so the previous version of these ways and relations is kept
+	 * @return
+	 * 			The number of changes of ways and relations which couldn't be applied
+	 */
+	public int unresolvedChanges(){ return unresolvedChanges; }
+
+	/**
+	 * Gives the OSMMap with the changes applied so far
+	 * @return
+	 * 			A new OSMMap containing the current ways and relations
+	 */
+	public OSMMap osmMap(){
+		return new OSMMap(withoutNull(ways), withoutNull(relations));
+	}
+
+	/**
+	 * Gives the Map with the changes applied so far, without transforming anything
+	 * @return
+	 * 			A new Map containing the current features
+	 */
+	public Map map(){
+		List<Attributed<Polygon>> polygons = withoutNull(wayPolygons);
+		for(List<Attributed<Polygon>> p : relationPolygons) polygons.addAll(p);
+		return new Map(withoutNull(wayPolyLines), polygons);
+	}
+
+	/**
+	 * Applies the changes collected from an osmChange file
+	 */
+	private int apply(ChangeCollector change){
+		BitSet changedWays = new BitSet();
+		BitSet changedRelations = new BitSet();
+
+		/*
+		 * The moved nodes change the geometry of their ways, the new nodes are only added when a way refers to them
+		 */
+		OSMNodeTable changedNodes = change.nodes;
+		for(int i=0; i<changedNodes.size(); i++){
+			int index = nodeTable.indexOf(changedNodes.id(i));
+			if(index<0) continue;
+			nodeTable.add(changedNodes.id(i), changedNodes.longitude(i), changedNodes.latitude(i), changedNodes.attributes(i));
+			nodeWays.forEach(index, changedWays);
+		}
+
+		for(EntityChange way : change.ways){
+			if(!way.deleted && !resolved(way, changedNodes)){
+				unresolvedChanges++;
+				continue;
+			}
+			OSMWay newWay = way.deleted ? null : buildWay(way, changedNodes);
+			int slot = wayIndices.get(way.id);
+			if(slot<0 && newWay==null) continue;
+			slot = putWay(way.id, newWay);
+			if(newWay!=null){
+				for(int i=0; i<newWay.nodesCount(); i++) nodeWays.add(newWay.nodeIndex(i), slot);
+			}
+			changedWays.set(slot);
+		}
+		for(int slot=changedWays.nextSetBit(0); slot>=0; slot=changedWays.nextSetBit(slot+1)) wayRelations.forEach(slot, changedRelations);
+
+		for(EntityChange relation : change.relations){
+			OSMRelation newRelation = null;
+			if(!relation.deleted){
+				List<Member> members = new ArrayList<Member>();
+				for(int i=0; i<relation.refs.length; i++){
+					OSMWay way = currentWay(relation.refs[i]);
+					if(way==null){
+						members = null;
+						break;
+					}
+					members.add(new Member(relation.types[i], relation.roles[i], way));
+				}
+				if(members==null){
+					unresolvedChanges++;
+					continue;
+				}
+				newRelation = new OSMRelation(relation.id, members, relation.attributes);
+			}
+			int slot = relationIndices.get(relation.id);
+			if(slot<0 && newRelation==null) continue;
+			slot = putRelation(relation.id, newRelation);
+			changedRelations.set(slot);
+		}
+
+		/*
+		 * The relations which weren't changed but have a changed way refer to the new way
+		 */
+		for(int slot=changedRelations.nextSetBit(0); slot>=0; slot=changedRelations.nextSetBit(slot+1)){
+			OSMRelation relation = relations.get(slot);
+			if(relation!=null) relations.set(slot, resolve(relation.id(), relation.members(), relation.attributes()));
+		}
+
+		for(int slot=changedWays.nextSetBit(0); slot>=0; slot=changedWays.nextSetBit(slot+1)) transformWay(slot);
+		for(int slot=changedRelations.nextSetBit(0); slot>=0; slot=changedRelations.nextSetBit(slot+1)) transformRelation(slot);
+		return changedWays.cardinality()+changedRelations.cardinality();
+	}
+
+	/**
+	 * Checks whether the nodes of a way of an osmChange file are all in the node table or in the change
+	 */
+	private boolean resolved(EntityChange way, OSMNodeTable changedNodes){
+		for(long ref : way.refs){
+			if(nodeTable.indexOf(ref)<0 && changedNodes.indexOf(ref)<0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Builds a way of an osmChange file whose nodes are resolved on the node table, adding the new nodes it refers to
+	 * @return
+	 * 			The new way, or null if it has less than two nodes
+	 */
+	private OSMWay buildWay(EntityChange way, OSMNodeTable changedNodes){
+		if(way.refs.length<2) return null;
+		int[] nodeIndices = new int[way.refs.length];
+		for(int i=0; i<nodeIndices.length; i++){
+			int index = nodeTable.indexOf(way.refs[i]);
+			if(index<0){
+				int changed = changedNodes.indexOf(way.refs[i]);
+				index = nodeTable.add(way.refs[i], changedNodes.longitude(changed), changedNodes.latitude(changed), changedNodes.attributes(changed));
+			}
+			nodeIndices[i] = index;
+		}
+		return new OSMWay(way.id, nodeTable, nodeIndices, way.attributes);
+	}
+
+	/**
+	 * Builds a relation whose members are the current ways with the identification numbers of given members
+	 * @return
+	 * 			The new relation, or null if one of its ways doesn't exist anymore
+	 */
+	private OSMRelation resolve(long id, List<Member> members, Attributes attributes){
+		List<Member> resolved = new ArrayList<Member>(members.size());
+		for(Member member : members){
+			OSMWay way = currentWay(member.member().id());
+			if(way==null) return null;
+			resolved.add(new Member(member.type(), member.role(), way));
+		}
+		return new OSMRelation(id, resolved, attributes);
+	}
+
+	private OSMWay currentWay(long id){
+		int slot = wayIndices.get(id);
+		return slot<0 ? null : ways.get(slot);
+	}
+
+	/**
+	 * Puts a way in its slot, creating the slot for a new way
+	 * @return
+	 * 			The slot of the way
+	 */
+	private int putWay(long id, OSMWay way){
+		int slot = wayIndices.get(id);
+		if(slot>=0){
+			ways.set(slot, way);
+			return slot;
+		}
+		slot = ways.size();
+		wayIndices.put(id, slot);
+		ways.add(way);
+		wayPolyLines.add(null);
+		wayPolygons.add(null);
+		return slot;
+	}
+
+	/**
+	 * Puts a relation in its slot, creating the slot for a new relation, and links its ways to it
+	 * @return
+	 * 			The slot of the relation
+	 */
+	private int putRelation(long id, OSMRelation relation){
+		int slot = relationIndices.get(id);
+		if(slot<0){
+			slot = relations.size();
+			relationIndices.put(id, slot);
+			relations.add(null);
+			relationPolygons.add(Collections.<Attributed<Polygon>>emptyList());
+		}
+		relations.set(slot, relation);
+		if(relation!=null){
+			for(Member member : relation.members()) wayRelations.add(wayIndices.get(member.member().id()), slot);
+		}
+		return slot;
+	}
+
+	private void transformWay(int slot){
+		OSMWay way = ways.get(slot);
+		wayPolyLines.set(slot, way==null ? null : transformer.wayPolyLine(way));
+		wayPolygons.set(slot, way==null ? null : transformer.wayPolygon(way));
+	}
+
+	private void transformRelation(int slot){
+		OSMRelation relation = relations.get(slot);
+		relationPolygons.set(slot, relation==null ? Collections.<Attributed<Polygon>>emptyList() : transformer.relationPolygons(relation));
+	}
+
+	private static <T> List<T> withoutNull(List<T> list){
+		List<T> result = new ArrayList<T>(list.size());
+		for(T element : list){
+			if(element!=null) result.add(element);
+		}
+		return result;
+	}
+
+	/**
+	 * Links integers to lists of integers, such as a node to the ways it belongs to, in linked
+	 * lists stored in primitive arrays. Links are never removed, a way no longer having a node
+	 * being only transformed once more than needed
+	 */
+	private static final class Links {
+
+		private int[] heads = new int[0];
+		private int[] next = new int[1024];
+		private int[] values = new int[1024];
+		private int size;
+
+		void add(int key, int value){
+			if(key>=heads.length){
+				int length = heads.length;
+				heads = Arrays.copyOf(heads, Math.max(key+1, 2*length));
+				Arrays.fill(heads, length, heads.length, -1);
+			}
+			if(heads[key]>=0 && values[heads[key]]==value) return;
+			if(size==next.length){
+				next = Arrays.copyOf(next, 2*size);
+				values = Arrays.copyOf(values, 2*size);
+			}
+			next[size] = heads[key];
+			values[size] = value;
+			heads[key] = size++;
+		}
+
+		void forEach(int key, BitSet set){
+			if(key>=heads.length) return;
+			for(int link=heads[key]; link>=0; link=next[link]) set.set(values[link]);
+		}
+	}
+
+	/**
+	 * Collects the entities of an osmChange file, in the order of the file
+	 */
+	private static final class ChangeCollector implements OSMHandler {
+
+		private final Set<String> keptKeys;
+		private final OSMNodeTable nodes = new OSMNodeTable();
+		private final List<EntityChange> ways = new ArrayList<EntityChange>();
+		private final List<EntityChange> relations = new ArrayList<EntityChange>();
+
+		private ChangeAction action = ChangeAction.MODIFY;
+		private boolean inNode;
+		private long nodeId;
+		private double nodeLongitude, nodeLatitude;
+		private EntityChange entity;
+		private List<EntityChange> entities;
+		private Attributes.Builder attributes;
+		private long[] refs = new long[64];
+		private Type[] types = new Type[16];
+		private String[] roles = new String[16];
+		private int refsCount;
+
+		ChangeCollector(Set<String> keptKeys){
+			this.keptKeys = keptKeys;
+		}
+
+		@Override
+		public void startChangeSection(ChangeAction action) {
+			this.action = action;
+		}
+
+		@Override
+		public void startNode(long id, double longitude, double latitude) {
+			inNode = true;
+			nodeId = id;
+			nodeLongitude = longitude;
+			nodeLatitude = latitude;
+			attributes = new Attributes.Builder();
+		}
+
+		@Override
+		public void startWay(long id) {
+			start(new EntityChange(id, action==ChangeAction.DELETE), ways);
+		}
+
+		@Override
+		public void startRelation(long id) {
+			start(new EntityChange(id, action==ChangeAction.DELETE), relations);
+		}
+
+		private void start(EntityChange change, List<EntityChange> changes){
+			entity = change;
+			entities = changes;
+			attributes = new Attributes.Builder();
+			refsCount = 0;
+		}
+
+		@Override
+		public void nodeReference(long ref) {
+			if(entity==null) return;
+			ensureCapacity();
+			refs[refsCount++] = ref;
+		}
+
+		@Override
+		public void member(Type type, long ref, String role) {
+			if(entity==null) return;
+			ensureCapacity();
+			types[refsCount] = type;
+			roles[refsCount] = role;
+			refs[refsCount++] = ref;
+		}
+
+		@Override
+		public void tag(String key, String value) {
+			if(attributes!=null && (keptKeys==null || keptKeys.contains(key))) attributes.put(key, value);
+		}
+
+		@Override
+		public void endEntity() {
+			if(inNode){
+				/*
+				 * A deleted node is still referred to by the ways deleted with it, and its ways are changed anyway
+				 */
+				if(action!=ChangeAction.DELETE) nodes.add(nodeId, nodeLongitude, nodeLatitude, attributes.build());
+				inNode = false;
+			} else if(entity!=null){
+				entity.refs = Arrays.copyOf(refs, refsCount);
+				entity.types = Arrays.copyOf(types, refsCount);
+				entity.roles = Arrays.copyOf(roles, refsCount);
+				entity.attributes = attributes.build();
+				entities.add(entity);
+				entity = null;
+			}
+			attributes = null;
+		}
+
+		private void ensureCapacity(){
+			if(refsCount<refs.length && refsCount<types.length) return;
+			int capacity = 2*Math.max(refs.length, types.length);
+			refs = Arrays.copyOf(refs, capacity);
+			types = Arrays.copyOf(types, capacity);
+			roles = Arrays.copyOf(roles, capacity);
+		}
+	}
+
+	/**
+	 * Represents a way or a relation of an osmChange file
+	 */
+	private static final class EntityChange {
+		private final long id;
+		private final boolean deleted;
+		private long[] refs;
+		private Type[] types;
+		private String[] roles;
+		private Attributes attributes;
+
+		EntityChange(long id, boolean deleted){
+			this.id = id;
+			this.deleted = deleted;
+		}
+	}
+}
@@ -33,6 +33,22 @@ public final class OSMNode extends OSMEntity{
 	 */
 	public PointGeo position(){ return this.position; }
 	
+	/**
+	 * Checks whether an object is a node with the same identification number, two OSMNodes
+	 * created from the same node of an OSMNodeTable being equal
+	 * @param that
+	 * 			The object to be compared with this node
+	 * @return
+	 * 			True when the object is a node with the same identification number, false otherwise
+	 */
+	@Override
+	public boolean equals(Object that){
+		return that instanceof OSMNode && ((OSMNode) that).id()==id();
+	}
+	
+	@Override
+	public int hashCode(){ return Long.hashCode(id()); }
+	
 	
 	public static class Builder extends OSMEntity.Builder{
 	
@@ -0,0 +1,228 @@
+package ch.epfl.imhof.osm;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.PointGeo;
+
+/**
+ * A store of the locations of OpenStreetMap nodes in a memory-mapped file, used instead of an
+ * OSMNodeTable when the nodes don't fit in the heap. The file is a dense array indexed by the
+ * identification number of the nodes, each node taking 8 bytes for its coordinates as integers
+ * counting 10^-7 degrees. The file is created sparse, so only the pages holding nodes take
+ * space on the disk, and the operating system keeps in memory the pages in use.
+ * The attributes of the few tagged nodes, and the nodes with a negative identification number,
+ * are kept in the heap. The file is deleted as soon as it's created, its space being freed once the store
+ * is closed and no longer used. A closed store can still be read, and its mapped chunks written
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+public final class OSMNodeStore implements Closeable {
+
+	private static final int NODE_SIZE = 8;
+	private static final int CHUNK_SIZE = 1 << 30;
+	private static final double FIXED_POINT_SCALE = 1e7;
+	/**
+	 * Added to the stored latitudes, which are then never 0, the value of the absent nodes
+	 */
+	private static final int LATITUDE_OFFSET = 1000000000;
+	private static final Attributes NO_ATTRIBUTES = new Attributes.Builder().build();
+
+	private final FileChannel channel;
+	private MappedByteBuffer[] chunks = new MappedByteBuffer[1];
+	private final Map<Long, Attributes> attributes = new HashMap<Long, Attributes>();
+	private final OSMNodeTable negativeNodes = new OSMNodeTable(true);
+	private long size;
+
+	/**
+	 * Creates an empty store in a new temporary file
+	 * @param directory
+	 * 			The directory of the file, or null for the default temporary directory
+	 * @throws IOException
+	 * 			When the file can't be created
+	 */
+	public OSMNodeStore(File directory) throws IOException {
+		File file = File.createTempFile("nodes", ".store", directory);
+		try{
+			this.channel = new RandomAccessFile(file, "rw").getChannel();
+		} finally {
+			/*
+			 * The open channel and the mapped chunks keep the content of a deleted file, on the systems allowing it
+			 */
+			if(!file.delete()) file.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Gives the number of nodes in the store
+	 * @return
+	 * 			The number of nodes in the store
+	 */
+	public long size(){ return size; }
+
+	/**
+	 * Checks whether the store contains a node
+	 * @param id
+	 * 			Identification number of the node
+	 * @return
+	 * 			True when the node is in the store, false otherwise
+	 */
+	public boolean contains(long id){
+		if(id<0) return negativeNodes.indexOf(id)>=0;
+		MappedByteBuffer chunk = chunk(id, false);
+		return chunk!=null && chunk.getInt(offset(id)+4)!=0;
+	}
+
+	/**
+	 * Gives the longitude of a node
+	 * @param id
+	 * 			Identification number of the node
+	 * @return
+	 * 			The longitude of the node, in radians
+	 * @throws IllegalArgumentException
+	 * 			When the node isn't in the store
+	 */
+	public double longitude(long id) throws IllegalArgumentException{
+		if(id<0) return negativeNodes.longitude(negativeIndex(id));
+		return toRadians(chunk(id, true).getInt(offset(id)));
+	}
+
+	/**
+	 * Gives the latitude of a node
+	 * @param id
+	 * 			Identification number of the node
+	 * @return
+	 * 			The latitude of the node, in radians
+	 * @throws IllegalArgumentException
+	 * 			When the node isn't in the store
+	 */
+	public double latitude(long id) throws IllegalArgumentException{
+		if(id<0) return negativeNodes.latitude(negativeIndex(id));
+		return toRadians(chunk(id, true).getInt(offset(id)+4)-LATITUDE_OFFSET);
+	}
+
+	/**
+	 * Gives the attributes of a node
+	 * @param id
+	 * 			Identification number of the node
+	 * @return
+	 * 			The attributes of the node, empty when the node isn't tagged
+	 */
+	public Attributes attributes(long id){
+		if(id<0) return negativeNodes.attributes(negativeIndex(id));
+		Attributes nodeAttributes = attributes.get(id);
+		return nodeAttributes==null ? NO_ATTRIBUTES : nodeAttributes;
+	}
+
+	/**
+	 * Creates an OSMNode with the data of a node of the store
+	 * @param id
+	 * 			Identification number of the node
+	 * @return
+	 * 			A new OSMNode equal to the node of the store
+	 * @throws IllegalArgumentException
+	 * 			When the node isn't in the store
+	 */
+	public OSMNode node(long id) throws IllegalArgumentException{
+		if(!contains(id)) throw new IllegalArgumentException();
+		return new OSMNode(id, new PointGeo(longitude(id), latitude(id)), attributes(id));
+	}
+
+	/**
+	 * Adds a node to the store, replacing the node with the same identification number if there's one.
+	 * The coordinates are rounded to 10^-7 degrees
+	 * @param id
+	 * 			Identification number of the node
+	 * @param longitude
+	 * 			Longitude of the node, in radians
+	 * @param latitude
+	 * 			Latitude of the node, in radians
+	 * @param nodeAttributes
+	 * 			Attributes of the node, or null when the node isn't tagged
+	 * @throws IllegalArgumentException
+	 * 			When the coordinates are not valid, as for PointGeo
+	 * @throws UncheckedIOException
+	 * 			When the file can't be extended
+	 */
+	void add(long id, double longitude, double latitude, Attributes nodeAttributes) throws IllegalArgumentException{
+		if(Math.abs(longitude) > Math.PI || Math.abs(latitude) > Math.PI/2) throw new IllegalArgumentException();
+		if(id<0){
+			if(negativeNodes.indexOf(id)<0) size++;
+			negativeNodes.add(id, longitude, latitude, nodeAttributes);
+			return;
+		}
+		MappedByteBuffer chunk = chunk(id, false);
+		if(chunk==null) chunk = map(id);
+		int offset = offset(id);
+		if(chunk.getInt(offset+4)==0) size++;
+		chunk.putInt(offset, toFixedPoint(longitude));
+		chunk.putInt(offset+4, toFixedPoint(latitude)+LATITUDE_OFFSET);
+		if(nodeAttributes==null || nodeAttributes.isEmpty()) attributes.remove(id);
+		else attributes.put(id, nodeAttributes);
+	}
+
+	/**
+	 * Closes the file of the store, whose chunks stay mapped until the store is no longer used. No node can be added
+	 * out of the chunks already mapped
+	 * @throws IOException
+	 * 			When the file can't be closed
+	 */
+	@Override
+	public void close() throws IOException { channel.close(); }
+
+	/**
+	 * Gives the chunk of the file holding a node
+	 * @param required
+	 * 			Boolean stating if an absent node is an error
+	 * @return
+	 * 			The chunk, or null when it isn't mapped and the node isn't required
+	 */
+	private MappedByteBuffer chunk(long id, boolean required){
+		long chunkIndex = id/(CHUNK_SIZE/NODE_SIZE);
+		MappedByteBuffer chunk = chunkIndex<chunks.length ? chunks[(int) chunkIndex] : null;
+		if(required && (chunk==null || chunk.getInt(offset(id)+4)==0)) throw new IllegalArgumentException();
+		return chunk;
+	}
+
+	/**
+	 * Maps the chunk of the file holding a node, extending the file
+	 */
+	private MappedByteBuffer map(long id){
+		int chunkIndex = (int) (id/(CHUNK_SIZE/NODE_SIZE));
+		if(chunkIndex>=chunks.length) chunks = Arrays.copyOf(chunks, Math.max(chunkIndex+1, 2*chunks.length));
+		try{
+			chunks[chunkIndex] = channel.map(FileChannel.MapMode.READ_WRITE, (long) chunkIndex*CHUNK_SIZE, CHUNK_SIZE);
+		} catch(IOException e){
+			throw new UncheckedIOException(e);
+		}
+		return chunks[chunkIndex];
+	}
+
+	private int negativeIndex(long id){
+		int index = negativeNodes.indexOf(id);
+		if(index<0) throw new IllegalArgumentException();
+		return index;
+	}
+
+	private static int offset(long id){
+		return (int) (id%(CHUNK_SIZE/NODE_SIZE))*NODE_SIZE;
+	}
+
+	private static int toFixedPoint(double radians){
+		return (int) Math.round(Math.toDegrees(radians)*FIXED_POINT_SCALE);
+	}
+
+	private static double toRadians(int fixedPoint){
+		return Math.toRadians(fixedPoint/FIXED_POINT_SCALE);
+	}
+}
@@ -0,0 +1,218 @@
+package ch.epfl.imhof.osm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.PointGeo;
+
+/**
+ * A columnar store of OpenStreetMap nodes, keeping the identification numbers and the
+ * coordinates of the nodes in parallel primitive arrays, and the attributes of the few
+ * tagged nodes in a separate sparse map. Nodes are referred to by their index in the table.
+ * The table only grows while a map is read, the nodes never change once added.
+ * In fixed-point mode the coordinates are stored as 32 bits integers counting 10^-7 degrees,
+ * the precision of OpenStreetMap, and converted to radians when they are read
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+public final class OSMNodeTable {
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final Attributes NO_ATTRIBUTES = new Attributes.Builder().build();
+	private static final double FIXED_POINT_SCALE = 1e7;
+
+	private final boolean fixedPoint;
+	private long[] ids = new long[INITIAL_CAPACITY];
+	private double[] longitudes;
+	private double[] latitudes;
+	private int[] fixedLongitudes;
+	private int[] fixedLatitudes;
+	private int size;
+	private final LongIndexMap indices = new LongIndexMap();
+	private final Map<Integer, Attributes> attributes = new HashMap<Integer, Attributes>();
+
+	/**
+	 * Creates a table storing the coordinates as doubles
+	 */
+	public OSMNodeTable(){
+		this(false);
+	}
+
+	/**
+	 * Creates a table storing the coordinates as doubles or as fixed-point integers
+	 * @param fixedPoint
+	 * 			Boolean stating if the coordinates are stored as integers counting 10^-7 degrees,
+	 * 			which is exact for coordinates read from OpenStreetMap
+	 */
+	public OSMNodeTable(boolean fixedPoint){
+		this.fixedPoint = fixedPoint;
+		if(fixedPoint){
+			fixedLongitudes = new int[INITIAL_CAPACITY];
+			fixedLatitudes = new int[INITIAL_CAPACITY];
+		} else {
+			longitudes = new double[INITIAL_CAPACITY];
+			latitudes = new double[INITIAL_CAPACITY];
+		}
+	}
+
+	/**
+	 * Checks whether the coordinates are stored as fixed-point integers
+	 * @return
+	 * 			True in fixed-point mode, false otherwise
+	 */
+	public boolean isFixedPoint(){ return fixedPoint; }
+
+	/**
+	 * Gives the number of nodes in the table
+	 * @return
+	 * 			The number of nodes in the table
+	 */
+	public int size(){ return size; }
+
+	/**
+	 * Gives the index of the node with a given identification number
+	 * @param id
+	 * 			Identification number of the node
+	 * @return
+	 * 			The index of the node, -1 if it's not in the table
+	 */
+	public int indexOf(long id){ return indices.get(id); }
+
+	/**
+	 * Gives the identification number of a node
+	 * @param index
+	 * 			Index of the node in the table
+	 * @return
+	 * 			The identification number of the node
+	 */
+	public long id(int index){ return ids[checkIndex(index)]; }
+
+	/**
+	 * Gives the longitude of a node
+	 * @param index
+	 * 			Index of the node in the table
+	 * @return
+	 * 			The longitude of the node, in radians
+	 */
+	public double longitude(int index){
+		checkIndex(index);
+		return fixedPoint ? toRadians(fixedLongitudes[index]) : longitudes[index];
+	}
+
+	/**
+	 * Gives the latitude of a node
+	 * @param index
+	 * 			Index of the node in the table
+	 * @return
+	 * 			The latitude of the node, in radians
+	 */
+	public double latitude(int index){
+		checkIndex(index);
+		return fixedPoint ? toRadians(fixedLatitudes[index]) : latitudes[index];
+	}
+
+	/**
+	 * Gives the attributes of a node
+	 * @param index
+	 * 			Index of the node in the table
+	 * @return
+	 * 			The attributes of the node, empty when the node isn't tagged
+	 */
+	public Attributes attributes(int index){
+		Attributes nodeAttributes = attributes.get(checkIndex(index));
+		return nodeAttributes==null ? NO_ATTRIBUTES : nodeAttributes;
+	}
+
+	/**
+	 * Creates an OSMNode with the data of a node of the table
+	 * @param index
+	 * 			Index of the node in the table
+	 * @return
+	 * 			A new OSMNode equal to the node of the table
+	 */
+	public OSMNode node(int index){
+		return new OSMNode(id(index), new PointGeo(longitude(index), latitude(index)), attributes(index));
+	}
+
+	/**
+	 * Gives the size of the arrays of the table, the attributes of the tagged nodes excepted
+	 * @return
+	 * 			The size of the arrays, in bytes
+	 */
+	long heapSize(){
+		return ids.length*(fixedPoint ? 16L : 24L)+indices.heapSize();
+	}
+
+	/**
+	 * Adds a node to the table, replacing the node with the same identification number if there's one.
+	 * In fixed-point mode the coordinates are rounded to 10^-7 degrees
+	 * @param id
+	 * 			Identification number of the node
+	 * @param longitude
+	 * 			Longitude of the node, in radians
+	 * @param latitude
+	 * 			Latitude of the node, in radians
+	 * @param nodeAttributes
+	 * 			Attributes of the node, or null when the node isn't tagged
+	 * @return
+	 * 			The index of the node in the table
+	 * @throws IllegalArgumentException
+	 * 			When the coordinates are not valid, as for PointGeo
+	 */
+	int add(long id, double longitude, double latitude, Attributes nodeAttributes) throws IllegalArgumentException{
+		if(Math.abs(longitude) > Math.PI || Math.abs(latitude) > Math.PI/2) throw new IllegalArgumentException();
+		int index = indices.get(id);
+		if(index<0){
+			if(size==ids.length) grow();
+			index = size++;
+			indices.put(id, index);
+		}
+		ids[index] = id;
+		if(fixedPoint){
+			fixedLongitudes[index] = toFixedPoint(longitude);
+			fixedLatitudes[index] = toFixedPoint(latitude);
+		} else {
+			longitudes[index] = longitude;
+			latitudes[index] = latitude;
+		}
+		if(nodeAttributes==null || nodeAttributes.isEmpty()) attributes.remove(index);
+		else attributes.put(index, nodeAttributes);
+		return index;
+	}
+
+	private int checkIndex(int index){
+		if(index<0 || index>=size) throw new IndexOutOfBoundsException();
+		return index;
+	}
+
+	private void grow(){
+		int capacity = ids.length*2;
+		ids = Arrays.copyOf(ids, capacity);
+		if(fixedPoint){
+			fixedLongitudes = Arrays.copyOf(fixedLongitudes, capacity);
+			fixedLatitudes = Arrays.copyOf(fixedLatitudes, capacity);
+		} else {
+			longitudes = Arrays.copyOf(longitudes, capacity);
+			latitudes = Arrays.copyOf(latitudes, capacity);
+		}
+	}
+
+	/**
+	 * Converts an angle in radians to 10^-7 degrees. The angles read from a file with 7 decimals
+	 * are converted back to the same integer, so the conversion loses nothing
+	 */
+	private static int toFixedPoint(double radians){
+		return (int) Math.round(Math.toDegrees(radians)*FIXED_POINT_SCALE);
+	}
+
+	/**
+	 * Converts an angle in 10^-7 degrees to radians, giving the same double as the reader for
+	 * coordinates with 7 decimals, as the quotient is the double nearest to the decimal value
+	 */
+	private static double toRadians(int fixedPoint){
+		return Math.toRadians(fixedPoint/FIXED_POINT_SCALE);
+	}
+}
@@ -0,0 +1,436 @@
+package ch.epfl.imhof.osm;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.osm.OSMRelation.Member.Type;
+
+/**
+ * Represents a Reader of an OpenStreetMap stored in the PBF format. The blobs of the file are
+ * independent, so they're decompressed and decoded in parallel, and then passed in the order
+ * of the file to the same assembler as the one of OSMMapReader
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+public final class OSMPBFReader {
+
+	private static final int MAX_HEADER_SIZE = 64*1024;
+	private static final int MAX_BLOB_SIZE = 32*1024*1024;
+	private static final List<String> SUPPORTED_FEATURES = Arrays.asList("OsmSchema-V0.6", "DenseNodes");
+	private static final double NANODEGREES = 1e9;
+
+	/**
+	 * Creates a reader of an OpenStreetMap in the PBF format
+	 */
+	private OSMPBFReader() {}
+
+	/**
+	 * Reads data from a PBF file and creates a new map using it
+	 * @param fileName
+	 * 			Name of the file from which the data will be read
+	 * @return
+	 * 			A new Map with the data from a given file
+	 * @throws IOException
+	 * 			when there are any errors with the input, or when the file is not a valid PBF file
+	 */
+	public static OSMMap readPBFFile(String fileName) throws IOException {
+		return readPBFFile(fileName, OSMMapReader.Options.DEFAULT);
+	}
+
+	/**
+	 * Reads data from a PBF file and creates a new map using it, following the given options
+	 * @param fileName
+	 * 			Name of the file from which the data will be read
+	 * @param options
+	 * 			Options of the reader, the backend being ignored
+	 * @return
+	 * 			A new Map with the data from a given file
+	 * @throws IOException
+	 * 			when there are any errors with the input, or when the file is not a valid PBF file
+	 */
+	public static OSMMap readPBFFile(String fileName, OSMMapReader.Options options) throws IOException {
+		OSMMapAssembler assembler = OSMMapReader.assembler(options);
+		try(InputStream i = new BufferedInputStream(new FileInputStream(fileName))){
+			read(i, assembler, Runtime.getRuntime().availableProcessors());
+		}
+		return assembler.build();
+	}
+
+	/**
+	 * Reads the entities of a PBF file touching a bounding box and creates a new map using them,
+	 * as OSMMapReader does for an XML file
+	 * @param fileName
+	 * 			Name of the file from which the data will be read
+	 * @param bottomLeft
+	 * 			The bottom left corner of the box
+	 * @param topRight
+	 * 			The top right corner of the box
+	 * @param margin
+	 * 			The distance by which the box is extended on each side, in meters
+	 * @param options
+	 * 			Options of the reader, the backend being ignored
+	 * @return
+	 * 			A new Map with the data of the given file touching the box
+	 * @throws IOException
+	 * 			when there are any errors with the input, or when the file is not a valid PBF file
+	 * @throws IllegalArgumentException
+	 * 			when the corners of the box are not ordered, or when the margin is negative
+	 */
+	public static OSMMap readPBFFile(String fileName, PointGeo bottomLeft, PointGeo topRight, double margin, OSMMapReader.Options options) throws IOException, IllegalArgumentException {
+		OSMBoundingBoxFilter filter = new OSMBoundingBoxFilter(bottomLeft, topRight, margin, options.clipWays());
+		return filter.read(handler -> {
+			try(InputStream i = new BufferedInputStream(new FileInputStream(fileName))){
+				read(i, handler, Runtime.getRuntime().availableProcessors());
+			}
+		}, OSMMapReader.assembler(options));
+	}
+
+	/**
+	 * Reads the blobs of a PBF input, decoding them with a given number of threads and passing
+	 * the entities to a handler in the order of the input
+	 * @param input
+	 * 			The PBF input
+	 * @param handler
+	 * 			The handler receiving the entities
+	 * @param threads
+	 * 			Number of threads decoding the blobs
+	 */
+	static void read(InputStream input, OSMHandler handler, int threads) throws IOException {
+		DataInputStream data = new DataInputStream(input);
+		ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "pbf-decoder");
+			thread.setDaemon(true);
+			return thread;
+		});
+		/*
+		 * At most twice as many blobs as threads are decoded ahead of the handler, which bounds the memory used
+		 */
+		Deque<Future<OSMHandlerRecorder>> pending = new ArrayDeque<Future<OSMHandlerRecorder>>();
+		try {
+			BlobHeader header;
+			while((header = readBlobHeader(data))!=null){
+				byte[] blob = new byte[header.dataSize];
+				data.readFully(blob);
+				if(header.type.equals("OSMHeader")){
+					checkHeader(decompress(blob));
+				} else if(header.type.equals("OSMData")){
+					pending.add(executor.submit(() -> decodeBlock(decompress(blob))));
+					if(pending.size()>=2*threads) replay(pending.poll(), handler);
+				}
+			}
+			while(!pending.isEmpty()) replay(pending.poll(), handler);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Waits for a blob to be decoded, and passes its entities to the handler
+	 */
+	private static void replay(Future<OSMHandlerRecorder> block, OSMHandler handler) throws IOException {
+		try {
+			block.get().replay(handler);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while decoding the PBF file", e);
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			throw new IOException("Invalid PBF file", e.getCause());
+		}
+	}
+
+	/**
+	 * Reads the header of the next blob
+	 * @return
+	 * 			The header of the blob, null at the end of the input
+	 */
+	private static BlobHeader readBlobHeader(DataInputStream data) throws IOException {
+		int first = data.read();
+		if(first<0) return null;
+		int length = (first << 24) | (data.readUnsignedByte() << 16) | (data.readUnsignedByte() << 8) | data.readUnsignedByte();
+		if(length<0 || length>MAX_HEADER_SIZE) throw new IOException("Invalid blob header size in the PBF file");
+		byte[] header = new byte[length];
+		data.readFully(header);
+		ProtobufReader reader = new ProtobufReader(header, 0, length);
+		String type = null;
+		int dataSize = -1;
+		while(reader.next()){
+			switch(reader.field()){
+				case 1: type = reader.readString(); break;
+				case 3: dataSize = (int) reader.readVarint(); break;
+				default: reader.skip();
+			}
+		}
+		if(type==null || dataSize<0 || dataSize>MAX_BLOB_SIZE) throw new IOException("Invalid blob header in the PBF file");
+		return new BlobHeader(type, dataSize);
+	}
+
+	/**
+	 * Gives the uncompressed content of a blob
+	 */
+	private static byte[] decompress(byte[] blob) throws IOException {
+		ProtobufReader reader = new ProtobufReader(blob, 0, blob.length);
+		byte[] raw = null;
+		byte[] zlib = null;
+		int rawSize = -1;
+		while(reader.next()){
+			switch(reader.field()){
+				case 1: raw = reader.readBytes(); break;
+				case 2: rawSize = (int) reader.readVarint(); break;
+				case 3: zlib = reader.readBytes(); break;
+				case 4: case 5: case 6: case 7: throw new IOException("Unsupported compression in the PBF file");
+				default: reader.skip();
+			}
+		}
+		if(raw!=null) return raw;
+		if(zlib==null || rawSize<0 || rawSize>MAX_BLOB_SIZE) throw new IOException("Invalid blob in the PBF file");
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(zlib);
+			byte[] content = new byte[rawSize];
+			int length = 0;
+			while(length<rawSize && !inflater.finished()){
+				int inflated = inflater.inflate(content, length, rawSize-length);
+				if(inflated==0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+				length += inflated;
+			}
+			if(length!=rawSize) throw new IOException("Invalid compressed blob in the PBF file");
+			return content;
+		} catch(DataFormatException e) {
+			throw new IOException("Invalid compressed blob in the PBF file", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Checks that the features required by the file are supported by the reader
+	 */
+	private static void checkHeader(byte[] header) throws IOException {
+		ProtobufReader reader = new ProtobufReader(header, 0, header.length);
+		while(reader.next()){
+			if(reader.field()==4){
+				String feature = reader.readString();
+				if(!SUPPORTED_FEATURES.contains(feature)) throw new IOException("Unsupported feature in the PBF file: "+feature);
+			} else {
+				reader.skip();
+			}
+		}
+	}
+
+	/**
+	 * Decodes a primitive block, recording its entities
+	 */
+	private static OSMHandlerRecorder decodeBlock(byte[] block) throws IOException {
+		ProtobufReader reader = new ProtobufReader(block, 0, block.length);
+		List<ProtobufReader> groups = new ArrayList<ProtobufReader>();
+		List<String> strings = new ArrayList<String>();
+		BlockGeometry geometry = new BlockGeometry();
+		while(reader.next()){
+			switch(reader.field()){
+				case 1:
+					ProtobufReader table = reader.readMessage();
+					while(table.next()){
+						if(table.field()==1) strings.add(table.readString());
+						else table.skip();
+					}
+					break;
+				case 2: groups.add(reader.readMessage()); break;
+				case 17: geometry.granularity = reader.readVarint(); break;
+				case 19: geometry.latitudeOffset = reader.readVarint(); break;
+				case 20: geometry.longitudeOffset = reader.readVarint(); break;
+				default: reader.skip();
+			}
+		}
+		String[] stringTable = strings.toArray(new String[strings.size()]);
+		OSMHandlerRecorder recorder = new OSMHandlerRecorder();
+		for(ProtobufReader group : groups){
+			while(group.next()){
+				switch(group.field()){
+					case 1: decodeNode(group.readMessage(), stringTable, geometry, recorder); break;
+					case 2: decodeDenseNodes(group.readMessage(), stringTable, geometry, recorder); break;
+					case 3: decodeWay(group.readMessage(), stringTable, recorder); break;
+					case 4: decodeRelation(group.readMessage(), stringTable, recorder); break;
+					default: group.skip();
+				}
+			}
+		}
+		return recorder;
+	}
+
+	private static void decodeNode(ProtobufReader node, String[] strings, BlockGeometry geometry, OSMHandler handler) throws IOException {
+		long id = 0, latitude = 0, longitude = 0;
+		LongList keys = new LongList(), values = new LongList();
+		while(node.next()){
+			switch(node.field()){
+				case 1: id = node.readSignedVarint(); break;
+				case 2: keys.addAll(node.readPacked(), false); break;
+				case 3: values.addAll(node.readPacked(), false); break;
+				case 8: latitude = node.readSignedVarint(); break;
+				case 9: longitude = node.readSignedVarint(); break;
+				default: node.skip();
+			}
+		}
+		handler.startNode(id, geometry.longitude(longitude), geometry.latitude(latitude));
+		tags(keys, values, strings, handler);
+		handler.endEntity();
+	}
+
+	private static void decodeDenseNodes(ProtobufReader dense, String[] strings, BlockGeometry geometry, OSMHandler handler) throws IOException {
+		LongList ids = new LongList(), latitudes = new LongList(), longitudes = new LongList(), keysValues = new LongList();
+		while(dense.next()){
+			switch(dense.field()){
+				case 1: ids.addAll(dense.readPacked(), true); break;
+				case 8: latitudes.addAll(dense.readPacked(), true); break;
+				case 9: longitudes.addAll(dense.readPacked(), true); break;
+				case 10: keysValues.addAll(dense.readPacked(), false); break;
+				default: dense.skip();
+			}
+		}
+		if(latitudes.size!=ids.size || longitudes.size!=ids.size) throw new IOException("Invalid dense nodes in the PBF file");
+		long id = 0, latitude = 0, longitude = 0;
+		int k = 0;
+		for(int i=0; i<ids.size; i++){
+			id += ids.values[i];
+			latitude += latitudes.values[i];
+			longitude += longitudes.values[i];
+			handler.startNode(id, geometry.longitude(longitude), geometry.latitude(latitude));
+			/*
+			 * The keys and values of all the nodes are stored one after the other, each node ending with a 0
+			 */
+			while(k<keysValues.size && keysValues.values[k]!=0){
+				if(k+1>=keysValues.size) throw new IOException("Invalid dense nodes in the PBF file");
+				handler.tag(string(strings, keysValues.values[k]), string(strings, keysValues.values[k+1]));
+				k += 2;
+			}
+			k++;
+			handler.endEntity();
+		}
+	}
+
+	private static void decodeWay(ProtobufReader way, String[] strings, OSMHandler handler) throws IOException {
+		long id = 0;
+		LongList keys = new LongList(), values = new LongList(), refs = new LongList();
+		while(way.next()){
+			switch(way.field()){
+				case 1: id = way.readVarint(); break;
+				case 2: keys.addAll(way.readPacked(), false); break;
+				case 3: values.addAll(way.readPacked(), false); break;
+				case 8: refs.addAll(way.readPacked(), true); break;
+				default: way.skip();
+			}
+		}
+		handler.startWay(id);
+		long ref = 0;
+		for(int i=0; i<refs.size; i++){
+			ref += refs.values[i];
+			handler.nodeReference(ref);
+		}
+		tags(keys, values, strings, handler);
+		handler.endEntity();
+	}
+
+	private static void decodeRelation(ProtobufReader relation, String[] strings, OSMHandler handler) throws IOException {
+		long id = 0;
+		LongList keys = new LongList(), values = new LongList(), roles = new LongList(), members = new LongList(), types = new LongList();
+		while(relation.next()){
+			switch(relation.field()){
+				case 1: id = relation.readVarint(); break;
+				case 2: keys.addAll(relation.readPacked(), false); break;
+				case 3: values.addAll(relation.readPacked(), false); break;
+				case 8: roles.addAll(relation.readPacked(), false); break;
+				case 9: members.addAll(relation.readPacked(), true); break;
+				case 10: types.addAll(relation.readPacked(), false); break;
+				default: relation.skip();
+			}
+		}
+		if(roles.size!=members.size || types.size!=members.size) throw new IOException("Invalid relation in the PBF file");
+		handler.startRelation(id);
+		long member = 0;
+		for(int i=0; i<members.size; i++){
+			member += members.values[i];
+			handler.member(memberType(types.values[i]), member, string(strings, roles.values[i]));
+		}
+		tags(keys, values, strings, handler);
+		handler.endEntity();
+	}
+
+	private static void tags(LongList keys, LongList values, String[] strings, OSMHandler handler) throws IOException {
+		if(keys.size!=values.size) throw new IOException("Invalid tags in the PBF file");
+		for(int i=0; i<keys.size; i++) handler.tag(string(strings, keys.values[i]), string(strings, values.values[i]));
+	}
+
+	private static String string(String[] strings, long index) throws IOException {
+		if(index<0 || index>=strings.length) throw new IOException("Invalid string index in the PBF file");
+		return strings[(int) index];
+	}
+
+	private static Type memberType(long type) throws IOException {
+		switch((int) type){
+			case 0: return Type.NODE;
+			case 1: return Type.WAY;
+			case 2: return Type.RELATION;
+			default: throw new IOException("Invalid member type in the PBF file");
+		}
+	}
+
+	/**
+	 * Represents the header of a blob, giving its type and its size
+	 */
+	private static final class BlobHeader {
+		private final String type;
+		private final int dataSize;
+
+		BlobHeader(String type, int dataSize){
+			this.type = type;
+			this.dataSize = dataSize;
+		}
+	}
+
+	/**
+	 * Represents the parameters used to decode the coordinates of a primitive block
+	 */
+	private static final class BlockGeometry {
+		private long granularity = 100;
+		private long latitudeOffset = 0;
+		private long longitudeOffset = 0;
+
+		/*
+		 * Dividing the exact number of nanodegrees gives the same value as parsing the decimal degrees of an XML file
+		 */
+		double latitude(long value){ return Math.toRadians((latitudeOffset+granularity*value)/NANODEGREES); }
+
+		double longitude(long value){ return Math.toRadians((longitudeOffset+granularity*value)/NANODEGREES); }
+	}
+
+	/**
+	 * A growable list of long values, filled with the values of repeated fields
+	 */
+	private static final class LongList {
+		private long[] values = new long[16];
+		private int size;
+
+		void addAll(ProtobufReader packed, boolean signed) throws IOException {
+			while(packed.hasRemaining()){
+				if(size==values.length) values = Arrays.copyOf(values, size*2);
+				values[size++] = signed ? packed.readSignedVarint() : packed.readVarint();
+			}
+		}
+	}
+}
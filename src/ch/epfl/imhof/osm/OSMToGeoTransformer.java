@@ -2,21 +2,30 @@ package ch.epfl.imhof.osm;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import ch.epfl.imhof.Attributed;
 import ch.epfl.imhof.Attributes;
-import ch.epfl.imhof.Graph;
+import ch.epfl.imhof.IntGraph;
 import ch.epfl.imhof.Map;
 import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.FixedPointEncoding;
+import ch.epfl.imhof.geometry.Point;
 import ch.epfl.imhof.geometry.PolyLine;
 import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.geometry.RTree;
 import ch.epfl.imhof.osm.OSMRelation.Member;
 import ch.epfl.imhof.projection.Projection;
 
@@ -30,7 +39,11 @@ public final class OSMToGeoTransformer {
 	    "tunnel", "waterway"));
 	private static final Set<String> polygonAttributes = new HashSet<>(Arrays.asList("building", "landuse", "layer", "leisure", "natural",
 	    "waterway"));
+	private static final Set<String> attributeKeys = attributeKeys(areaAttributes, polylinesAttributes, polygonAttributes, Arrays.asList("area", "type"));
 	private Projection projection;
+	private final FixedPointEncoding encoding;
+	private final Predicate<Attributes> polygonFilter;
+	private final Predicate<Attributes> polyLineFilter;
 
 	/**
 	 * Gives a type of projection used in a transformer
@@ -38,7 +51,61 @@ public final class OSMToGeoTransformer {
 	 * 			A type of projection used in a transformer
 	 */
 	public OSMToGeoTransformer(Projection projection){
+		this(projection, null);
+	}
+	
+	/**
+	 * Gives a type of projection used in a transformer, and the encoding of the points of the polyLines it builds
+	 * @param projection
+	 * 			A type of projection used in a transformer
+	 * @param encoding
+	 * 			The fixed-point encoding of the projected points, or null to store them as Points
+	 */
+	public OSMToGeoTransformer(Projection projection, FixedPointEncoding encoding){
+		this(projection, encoding, null, null);
+	}
+	
+	/**
+	 * Gives a type of projection used in a transformer, the encoding of the points of the polyLines it builds,
+	 * and the filters of the features it builds, such as the scopes of a Painter. A feature is tested with its
+	 * attributes only, before its nodes are projected, so a feature no filter accepts is never built.
+	 * The filters are tested once per distinct set of attributes, the features sharing few of them
+	 * @param projection
+	 * 			A type of projection used in a transformer
+	 * @param encoding
+	 * 			The fixed-point encoding of the projected points, or null to store them as Points
+	 * @param polygonFilter
+	 * 			A filter of the polygons, given an Attributed without value, or null to build all the polygons
+	 * @param polyLineFilter
+	 * 			A filter of the polyLines, given an Attributed without value, or null to build all the polyLines
+	 */
+	public OSMToGeoTransformer(Projection projection, FixedPointEncoding encoding, Predicate<Attributed<?>> polygonFilter, Predicate<Attributed<?>> polyLineFilter){
 		this.projection = projection;
+		this.encoding = encoding;
+		this.polygonFilter = memoized(polygonFilter);
+		this.polyLineFilter = memoized(polyLineFilter);
+	}
+	
+	private static Predicate<Attributes> memoized(Predicate<Attributed<?>> filter){
+		if(filter==null) return null;
+		ConcurrentHashMap<Attributes, Boolean> decisions = new ConcurrentHashMap<Attributes, Boolean>();
+		return attributes -> decisions.computeIfAbsent(attributes, a -> filter.test(new Attributed<Void>(null, a)));
+	}
+	
+	/**
+	 * Gives the keys of the attributes read by a transformer, that is the keys of the attributes
+	 * kept in the Map and the ones telling whether a way is an area or a relation a multipolygon.
+	 * The other attributes can be skipped when the OSMMap is read
+	 * @return
+	 * 			An unmodifiable set of the keys of the attributes read by a transformer
+	 */
+	public static Set<String> attributeKeys(){ return attributeKeys; }
+	
+	@SafeVarargs
+	private static Set<String> attributeKeys(Collection<String>... keys){
+		Set<String> union = new HashSet<String>();
+		for(Collection<String> k : keys) union.addAll(k);
+		return Collections.unmodifiableSet(union);
 	}
 	
 	/**
@@ -50,114 +117,217 @@ public final class OSMToGeoTransformer {
 	 */
 	public Map transform(OSMMap map){		
 		Map.Builder mapBuilder = new Map.Builder();
+		ProjectedNodes projected = new ProjectedNodes(builtWays(map), projection, false);
 		
 		/*	
 		 * Goes through all the ways of the map, and constructs for each Way a PolyLines or a Polygon.
-		 * Filter the needed attributes, then builds an Attributed<N> with the corresponding PolyLines or Polygon.
 		 */
-		Attributes attributesKeepKeysOnly;
 		for(OSMWay way : map.ways()){
-			if(way.attributes()!=null){
-				if(way.isClosed()) {
-					if(("1").equals(way.attributes().get("area")) 
-							|| ("yes").equals(way.attributes().get("area")) 
-							|| ("true").equals(way.attributes().get("area"))
-							|| hasArea(way.attributes())) {	// Implies is an area builds an Attributed<Polygon>
-						attributesKeepKeysOnly = way.attributes().keepOnlyKeys(polygonAttributes);
-						if(attributesKeepKeysOnly!=null && !attributesKeepKeysOnly.isEmpty()){
-							mapBuilder.addPolygon(new Attributed<Polygon> (new Polygon( (ClosedPolyLine) polyLineBuilderFromWay(true, way)), attributesKeepKeysOnly) ) ;
-						}
-					} else { // Implies it's a closed PolyLine so builds an Attributed<ClosedPolyLine>
-						attributesKeepKeysOnly = way.attributes().keepOnlyKeys(polylinesAttributes);
-						if(attributesKeepKeysOnly!=null && !attributesKeepKeysOnly.isEmpty()){
-							mapBuilder.addPolyLine(new Attributed<PolyLine>(polyLineBuilderFromWay(true, way), attributesKeepKeysOnly)) ;	
-						}
-					}
-				} else { // Implies it's an open PolyLine so builds an Attributed<OpenPolyLine>
-					attributesKeepKeysOnly = way.attributes().keepOnlyKeys(polylinesAttributes);
-					if(attributesKeepKeysOnly!=null && !attributesKeepKeysOnly.isEmpty()){
-						mapBuilder.addPolyLine(new Attributed<PolyLine>(polyLineBuilderFromWay(false, way), attributesKeepKeysOnly)) ;	
-
-					}
-				}
-			}
+			Attributed<Polygon> polygon = wayPolygon(way, projected);
+			if(polygon!=null) mapBuilder.addPolygon(polygon);
+			Attributed<PolyLine> polyLine = wayPolyLine(way, projected);
+			if(polyLine!=null) mapBuilder.addPolyLine(polyLine);
 		}
 
 		/*
 		 * Goes through the relations and builds a list of Polygons with holes for each relation.
 		 */
-		List<Attributed<Polygon>> assembledPolygons;
 		for(OSMRelation relation : map.relations()){
-			if(relation.attributes().contains("type") && relation.attributes().get("type").equals("multipolygon")){
-				attributesKeepKeysOnly = relation.attributes().keepOnlyKeys(polygonAttributes);
-				if(!attributesKeepKeysOnly.isEmpty() && attributesKeepKeysOnly!=null){ 
-					assembledPolygons = assemblePolygon(relation);
-					if(assembledPolygons!=null){
-						for(Attributed<Polygon> attributedPolygon : assembledPolygons){
-							mapBuilder.addPolygon(attributedPolygon);
-						}
-					}
-				}
+			for(Attributed<Polygon> attributedPolygon : relationPolygons(relation, projected)){
+				mapBuilder.addPolygon(attributedPolygon);
 			}
 		}
 		return mapBuilder.build();
 	}
 	
+	/**
+	 * Transforms an OSMMap to a map of Polygons and PolyLines, transforming the ways and the relations
+	 * in parallel when asked to. The ways and the relations are independent, each thread collecting
+	 * the features of a part of them, and the parts are joined in the order of the OSMMap, so the
+	 * Map is the same as the one of a sequential transformation. The nodes are projected in parallel too
+	 * @param map
+	 * 			An OSMMap that will be transformed
+	 * @param parallel
+	 * 			Boolean stating if the ways and relations are transformed by the threads of the common fork-join pool
+	 * @return
+	 * 			A Map transformed with the projection of the constructor
+	 */
+	public Map transform(OSMMap map, boolean parallel){
+		if(!parallel) return transform(map);
+		ProjectedNodes projected = new ProjectedNodes(builtWays(map), projection, true);
+		List<Attributed<Polygon>> polygons = map.ways().parallelStream().map(way -> wayPolygon(way, projected)).filter(Objects::nonNull).collect(Collectors.toCollection(ArrayList::new));
+		List<Attributed<PolyLine>> polyLines = map.ways().parallelStream().map(way -> wayPolyLine(way, projected)).filter(Objects::nonNull).collect(Collectors.toList());
+		polygons.addAll(map.relations().parallelStream().flatMap(relation -> relationPolygons(relation, projected).stream()).collect(Collectors.toList()));
+		return new Map(polyLines, polygons);
+	}
+	
+	/**
+	 * Gives the ways whose nodes are needed to build the features of a map, that is the ways building
+	 * a polygon or a polyLine and the members of the relations building polygons
+	 * @param map
+	 * 			An OSMMap that will be transformed
+	 * @return
+	 * 			The ways whose nodes are projected
+	 */
+	private List<OSMWay> builtWays(OSMMap map){
+		List<OSMWay> ways = new ArrayList<OSMWay>();
+		for(OSMWay way : map.ways()){
+			if(wayPolygonAttributes(way)!=null || wayPolyLineAttributes(way)!=null) ways.add(way);
+		}
+		for(OSMRelation relation : map.relations()){
+			if(relationPolygonAttributes(relation)==null) continue;
+			for(Member member : relation.members()){
+				if(member.type()==Member.Type.WAY) ways.add((OSMWay) member.member());
+			}
+		}
+		return ways;
+	}
+	
+	/**
+	 * Gives the attributes of the polygon of a way, or null when the way builds no polygon
+	 */
+	private Attributes wayPolygonAttributes(OSMWay way){
+		if(way.attributes()==null || !way.isClosed() || !isArea(way.attributes())) return null;
+		Attributes attributesKeepKeysOnly = way.attributes().keepOnlyKeys(polygonAttributes);
+		if(attributesKeepKeysOnly.isEmpty() || (polygonFilter!=null && !polygonFilter.test(attributesKeepKeysOnly))) return null;
+		return attributesKeepKeysOnly;
+	}
+	
+	/**
+	 * Gives the attributes of the polyLine of a way, or null when the way builds no polyLine
+	 */
+	private Attributes wayPolyLineAttributes(OSMWay way){
+		if(way.attributes()==null || (way.isClosed() && isArea(way.attributes()))) return null;
+		Attributes attributesKeepKeysOnly = way.attributes().keepOnlyKeys(polylinesAttributes);
+		if(attributesKeepKeysOnly.isEmpty() || (polyLineFilter!=null && !polyLineFilter.test(attributesKeepKeysOnly))) return null;
+		return attributesKeepKeysOnly;
+	}
+	
+	/**
+	 * Gives the attributes of the polygons of a relation, or null when the relation builds no polygon
+	 */
+	private Attributes relationPolygonAttributes(OSMRelation relation){
+		if(!"multipolygon".equals(relation.attributes().get("type"))) return null;
+		Attributes attributesKeepKeysOnly = relation.attributes().keepOnlyKeys(polygonAttributes);
+		if(attributesKeepKeysOnly.isEmpty() || (polygonFilter!=null && !polygonFilter.test(attributesKeepKeysOnly))) return null;
+		return attributesKeepKeysOnly;
+	}
+	
+	/**
+	 * Transforms a closed way whose attributes describe an area to an Attributed<Polygon>,
+	 * filtering the needed attributes
+	 * @param way
+	 * 			A way of an OSMMap
+	 * @return
+	 * 			The Attributed<Polygon> of the way, or null if the way is not an area or has none of the needed attributes or is filtered out
+	 */
+	Attributed<Polygon> wayPolygon(OSMWay way){ return wayPolygon(way, null); }
+	
+	private Attributed<Polygon> wayPolygon(OSMWay way, ProjectedNodes projected){
+		Attributes attributesKeepKeysOnly = wayPolygonAttributes(way);
+		if(attributesKeepKeysOnly==null) return null;
+		return new Attributed<Polygon> (new Polygon( (ClosedPolyLine) polyLineBuilderFromWay(true, way, projected)), attributesKeepKeysOnly);
+	}
+	
+	/**
+	 * Transforms a way which is not an area to an Attributed<PolyLine>, open or closed as the way,
+	 * filtering the needed attributes
+	 * @param way
+	 * 			A way of an OSMMap
+	 * @return
+	 * 			The Attributed<PolyLine> of the way, or null if the way is an area or has none of the needed attributes or is filtered out
+	 */
+	Attributed<PolyLine> wayPolyLine(OSMWay way){ return wayPolyLine(way, null); }
+	
+	private Attributed<PolyLine> wayPolyLine(OSMWay way, ProjectedNodes projected){
+		Attributes attributesKeepKeysOnly = wayPolyLineAttributes(way);
+		if(attributesKeepKeysOnly==null) return null;
+		return new Attributed<PolyLine>(polyLineBuilderFromWay(way.isClosed(), way, projected), attributesKeepKeysOnly);
+	}
+	
+	/**
+	 * Transforms a multipolygon relation to Attributed<Polygon>s with holes, filtering the needed attributes
+	 * @param relation
+	 * 			A relation of an OSMMap
+	 * @return
+	 * 			The list of Attributed<Polygon>s of the relation, empty if the relation is not a multipolygon,
+	 * 			has none of the needed attributes, is filtered out or its rings can't be assembled
+	 */
+	List<Attributed<Polygon>> relationPolygons(OSMRelation relation){ return relationPolygons(relation, null); }
+	
+	private List<Attributed<Polygon>> relationPolygons(OSMRelation relation, ProjectedNodes projected){
+		if(relationPolygonAttributes(relation)==null) return Collections.emptyList();
+		List<Attributed<Polygon>> assembledPolygons = assemblePolygon(relation, projected);
+		return assembledPolygons==null ? Collections.<Attributed<Polygon>>emptyList() : assembledPolygons;
+	}
+	
 	/**
 	 * Creates a list of closed polyLines with a given role from a given relation
 	 * @param relation
 	 * 			A relation from which the polyLines will be extracted
 	 * @param role
 	 * 			A role of closed polyLines
+	 * @param projected
+	 * 			The projected nodes of the tables of the ways, or null to project the nodes of the ways
 	 * @return
 	 * 			A List of ClosedPolyLines from the relation which have the required role
 	 */
-	private List<ClosedPolyLine> ringsForRole(OSMRelation relation, String role){
+	private List<ClosedPolyLine> ringsForRole(OSMRelation relation, String role, ProjectedNodes projected){
 		
 		/*
 		 * Goes through the ways of the relation that satisfy the current role.
-		 * Adds each node of the way to a graph and links it to his neighbors.
+		 * Gives each node an index in the order it's met, keeps its projected coordinates, and links it to its neighbors.
 		 * Builds the graph
 		 */
-		Graph.Builder<OSMNode> graphBuilder = new Graph.Builder<OSMNode>();
-		OSMWay way;
+		LongIndexMap indices = new LongIndexMap();
+		double[] coordinates = new double[16];
+		IntGraph.Builder graphBuilder = new IntGraph.Builder();
 		for(Member member : relation.members()){
-			if(member.type().toString()=="WAY" && member.role().equals(role)){
-				way = (OSMWay) member.member();
-                for (int i = 0; i < way.nodes().size() - 1; i++){
-                	graphBuilder.addNode(way.nodes().get(i));
-                	graphBuilder.addNode(way.nodes().get(i+1));
-                	graphBuilder.addEdge(way.nodes().get(i), way.nodes().get(i+1));
-                }
+			if(member.type()!=Member.Type.WAY || !member.role().equals(role)) continue;
+			OSMWay way = (OSMWay) member.member();
+			double[] projectedCoordinates = projected==null ? null : projected.coordinates(way.nodeTable());
+			int previous = -1;
+			for(int i=0; i<way.nodesCount(); i++){
+				long id = way.nodeId(i);
+				int index = indices.get(id);
+				if(index<0){
+					index = graphBuilder.addNode();
+					indices.put(id, index);
+					if(2*index==coordinates.length) coordinates = Arrays.copyOf(coordinates, 2*coordinates.length);
+					if(projectedCoordinates!=null){
+						int tableIndex = way.nodeIndex(i);
+						coordinates[2*index] = projectedCoordinates[2*tableIndex];
+						coordinates[2*index+1] = projectedCoordinates[2*tableIndex+1];
+					} else {
+						Point point = projection.project(way.nodes().get(i).position());
+						coordinates[2*index] = point.x();
+						coordinates[2*index+1] = point.y();
+					}
+				}
+				if(previous>=0) graphBuilder.addEdge(previous, index);
+				previous = index;
 			}
 		}
-		Graph<OSMNode> graph = graphBuilder.build();
-		for(OSMNode node : graph.nodes()){
-			if(graph.neighborsOf(node).size()!=2){return new ArrayList<ClosedPolyLine>();}
+		IntGraph graph = graphBuilder.build();
+		for(int node=0; node<graph.nodeCount(); node++){
+			if(graph.degree(node)!=2){return new ArrayList<ClosedPolyLine>();}
 		}
 
 		/*
-		 * Goes through all the nodes of a graph to construct a list of ClosedPolyLines (rings) 
+		 * Walks each ring from its first node met, following the way it was met in, each node being visited once
 		 */
 		List<ClosedPolyLine> finalPolyLineList = new ArrayList<ClosedPolyLine>();
-		boolean creatingPolyLine;	
-		ArrayList<OSMNode> unusedNodes = new ArrayList<OSMNode>(graph.nodes());
-		OSMNode currentNode;
-		PolyLine.Builder lineBuilder;
-		
-		while(unusedNodes.size()>0){
-			lineBuilder = new PolyLine.Builder();
-			currentNode = unusedNodes.get(0);
-			creatingPolyLine=true;
-			do {
-				lineBuilder.addPoint(projection.project(currentNode.position()));
-				unusedNodes.remove(currentNode);
-				currentNode = unusedNeighbor(unusedNodes, graph.neighborsOf(currentNode));
-				if(currentNode==null){
-					finalPolyLineList.add(lineBuilder.buildClosed());
-					creatingPolyLine=false;
-				}
-			} while (creatingPolyLine);
+		BitSet visited = new BitSet(graph.nodeCount());
+		for(int start=visited.nextClearBit(0); start<graph.nodeCount(); start=visited.nextClearBit(start+1)){
+			PolyLine.Builder lineBuilder = new PolyLine.Builder();
+			int current = start;
+			while(current>=0){
+				lineBuilder.addPoint(coordinates[2*current], coordinates[2*current+1]);
+				visited.set(current);
+				int first = graph.neighbor(current, 0), second = graph.neighbor(current, 1);
+				current = !visited.get(first) ? first : !visited.get(second) ? second : -1;
+			}
+			finalPolyLineList.add(lineBuilder.buildClosed(encoding));
 		}
 		return finalPolyLineList;
 	}
@@ -166,38 +336,46 @@ public final class OSMToGeoTransformer {
 	 * Creates a list of Attributed<Polygons> with holes from a relation
 	 * @param relation
 	 * 			A relation from which the polygons with holes will be extracted
+	 * @param projected
+	 * 			The projected nodes of the tables of the ways, or null to project the nodes of the ways
 	 * @return
 	 * 			A list of Attributed<Polygon>
 	 */
-	private List<Attributed<Polygon>> assemblePolygon(OSMRelation relation){
+	private List<Attributed<Polygon>> assemblePolygon(OSMRelation relation, ProjectedNodes projected){
 		
 		/*
 		 * Goes through all the relations and adds each inner way to innerWays and each outer way to outerWays.
 		 */
 		List<Attributed<Polygon>> polygonList = new ArrayList<Attributed<Polygon>>();
-		List<ClosedPolyLine> outerLines = ringsForRole(relation, "outer");
+		List<ClosedPolyLine> outerLines = ringsForRole(relation, "outer", projected);
 		if(outerLines.isEmpty()) return null;
 		Collections.sort(outerLines, new ComparatorOfAreas());
-		List<ClosedPolyLine> innerLines = ringsForRole(relation, "inner");		
-		HashMap<ClosedPolyLine,List<ClosedPolyLine>> polygonMap = new HashMap<ClosedPolyLine,List<ClosedPolyLine>>(); 
+		List<ClosedPolyLine> innerLines = ringsForRole(relation, "inner", projected);		
+		HashMap<ClosedPolyLine,List<ClosedPolyLine>> polygonMap = new LinkedHashMap<ClosedPolyLine,List<ClosedPolyLine>>(); 
 		
 		
 		/* 
-		 * Puts an OuterLine key (with an empty arrayList of closedPolyLines as a value)to a map that will represent Polygons and its corresponding holes
+		 * Puts an OuterLine key (with an empty arrayList of closedPolyLines as a value)to a map that will represent Polygons and its corresponding holes.
+		 * The map keeps the order of the shells, so the polygons of a relation are always given in the same order
 		 */
 		for(ClosedPolyLine initalator : outerLines){ polygonMap.put(initalator, new ArrayList<ClosedPolyLine>());}
 
 		/*
-		 * Adds pairs of shells of a polygon and a list of its corresponding holes to a Map
+		 * Adds each hole to the smallest shell containing its first point and larger than it.
+		 * Only the shells whose bounding box contains the point are tested, found in an R-tree of the shells
 		 */
-		for(ClosedPolyLine outerLine : outerLines){
-			Iterator<ClosedPolyLine> iterator = innerLines.iterator();
-			while(iterator.hasNext()){
-				ClosedPolyLine currentLine = iterator.next();
-				if(outerLine.containsPoint(currentLine.firstPoint()) && (outerLine.area() > currentLine.area()))
+		RTree.Builder<Integer> shellsBuilder = new RTree.Builder<Integer>();
+		for(int i=0; i<outerLines.size(); i++){ shellsBuilder.add(outerLines.get(i).boundingBox(), i); }
+		RTree<Integer> shells = shellsBuilder.build();
+		for(ClosedPolyLine innerLine : innerLines){
+			List<Integer> candidates = shells.containing(innerLine.firstPoint());
+			Collections.sort(candidates);
+			for(int candidate : candidates){
+				ClosedPolyLine outerLine = outerLines.get(candidate);
+				if(outerLine.containsPoint(innerLine.firstPoint()) && (outerLine.area() > innerLine.area()))
 				{
-					polygonMap.get(outerLine).add(currentLine);
-					iterator.remove();
+					polygonMap.get(outerLine).add(innerLine);
+					break;
 				}
 			}
 		}
@@ -221,32 +399,43 @@ public final class OSMToGeoTransformer {
 	 * 			Boolean stating whether an OSMWay is closed
 	 * @param way
 	 * 			An OSMWay which will be used to create a PolyLine
+	 * @param projected
+	 * 			The projected nodes of the tables of the ways, or null to project the nodes of the way
 	 * @return
 	 * 			A PolyLine built from an OSMWay
 	 */
-	private PolyLine polyLineBuilderFromWay(boolean closed, OSMWay way) {
+	private PolyLine polyLineBuilderFromWay(boolean closed, OSMWay way, ProjectedNodes projected) {
 		
 		PolyLine.Builder polylineBuilder = new PolyLine.Builder();
-		for(OSMNode node : way.nonRepeatingNodes()){
-			polylineBuilder.addPoint(projection.project(node.position()));
+		double[] coordinates = projected==null ? null : projected.coordinates(way.nodeTable());
+		if(coordinates!=null){
+			
+			/*
+			 * Reads the coordinates of the nodes from the projected table, the last node of a closed way being the first one
+			 */
+			int count = way.isClosed() ? way.nodesCount()-1 : way.nodesCount();
+			for(int i=0; i<count; i++){
+				int index = way.nodeIndex(i);
+				polylineBuilder.addPoint(coordinates[2*index], coordinates[2*index+1]);
+			}
+		} else {
+			for(OSMNode node : way.nonRepeatingNodes()){
+				polylineBuilder.addPoint(projection.project(node.position()));
+			}
 		}
-		return closed ? polylineBuilder.buildClosed() : polylineBuilder.buildOpen();
+		return closed ? polylineBuilder.buildClosed(encoding) : polylineBuilder.buildOpen(encoding);
 	}
 	
 	/**
-	 * Gives a node from a set that hasn't been "used" yet, which means a node from a set which is contained in a list of unused nodes
-	 * @param unusedNodes
-	 * 			An ArrayList of nodes that haven't been used yet
-	 * @param set
-	 * 			A set of of nodes from which an unused one will be chosen
+	 * Checks whether the attributes of a closed way describe an area, either explicitly or by an attribute corresponding to an area
+	 * @param attributes
+	 * 			Attributes which will be checked
 	 * @return
-	 * 			Null if an unused node doesn't exist, an unused node otherwise
+	 * 			True when the attributes describe an area, false otherwise
 	 */
-	private OSMNode unusedNeighbor(ArrayList<OSMNode> unusedNodes, Set<OSMNode> set){
-		for(OSMNode node : set){
-			if(unusedNodes.contains(node)) return node;
-		}
-		return null;
+	private boolean isArea(Attributes attributes){
+		String area = attributes.get("area");
+		return "1".equals(area) || "yes".equals(area) || "true".equals(area) || hasArea(attributes);
 	}
 	
 	/**
@@ -1,8 +1,11 @@
 package ch.epfl.imhof.osm;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
 
 import ch.epfl.imhof.Attributes;
 
@@ -15,6 +18,10 @@ import ch.epfl.imhof.Attributes;
 public final class OSMWay extends OSMEntity {
 	
 	private final List<OSMNode> nodes;
+	private final OSMNodeTable nodeTable;
+	private final int[] nodeIndices;
+	private final OSMNodeStore nodeStore;
+	private final long[] nodeIds;
 	
 	/**
 	 * Creates an OSMWay using an identification number, list of nodes and attributes
@@ -31,7 +38,56 @@ public final class OSMWay extends OSMEntity {
 		super(id, attributes);
 		if(nodes.size()<2) throw new IllegalArgumentException();
 		this.nodes = Collections.unmodifiableList(new ArrayList<OSMNode>(nodes));
-		
+		this.nodeTable = null;
+		this.nodeIndices = null;
+		this.nodeStore = null;
+		this.nodeIds = null;
+	}
+	
+	/**
+	 * Creates an OSMWay whose nodes are stored in a columnar node table
+	 * @param id
+	 * 			Identification number of an OSMWay
+	 * @param nodeTable
+	 * 			The table containing the nodes of the OSMWay
+	 * @param nodeIndices
+	 * 			Indices of the nodes of the OSMWay in the table
+	 * @param attributes
+	 * 			Attributes of an OSMWay
+	 * @throws IllegalArgumentException
+	 * 			when there's less than two nodes in a list of nodes of an OSMWay
+	 */
+	public OSMWay(long id, OSMNodeTable nodeTable, int[] nodeIndices, Attributes attributes) throws IllegalArgumentException{
+		super(id, attributes);
+		if(nodeIndices.length<2) throw new IllegalArgumentException();
+		this.nodeTable = nodeTable;
+		this.nodeIndices = nodeIndices.clone();
+		this.nodeStore = null;
+		this.nodeIds = null;
+		this.nodes = new TableNodes();
+	}
+	
+	/**
+	 * Creates an OSMWay whose nodes are stored in a memory-mapped node store
+	 * @param id
+	 * 			Identification number of an OSMWay
+	 * @param nodeStore
+	 * 			The store containing the nodes of the OSMWay
+	 * @param nodeIds
+	 * 			Identification numbers of the nodes of the OSMWay
+	 * @param attributes
+	 * 			Attributes of an OSMWay
+	 * @throws IllegalArgumentException
+	 * 			when there's less than two nodes in a list of nodes of an OSMWay
+	 */
+	public OSMWay(long id, OSMNodeStore nodeStore, long[] nodeIds, Attributes attributes) throws IllegalArgumentException{
+		super(id, attributes);
+		if(nodeIds.length<2) throw new IllegalArgumentException();
+		this.nodeTable = null;
+		this.nodeIndices = null;
+		this.nodeStore = nodeStore;
+		this.nodeIds = nodeIds.clone();
+		this.nodes = new StoreNodes();
 	}
 	
 	/**
@@ -81,13 +137,71 @@ public final class OSMWay extends OSMEntity {
 	 * 			True when the way is closed, false otherwise
 	 */
 	public boolean isClosed(){
+		if(nodeTable!=null) return nodeIndices[0]==nodeIndices[nodeIndices.length-1];
+		if(nodeStore!=null) return nodeIds[0]==nodeIds[nodeIds.length-1];
 		return firstNode().equals(lastNode()); 
 		}
 	
+	/**
+	 * Gives the table containing the nodes of an OSMWay
+	 * @return
+	 * 			The table containing the nodes, null when the nodes are stored as OSMNodes
+	 */
+	OSMNodeTable nodeTable(){ return nodeTable; }
+	
+	/**
+	 * Gives the index in the node table of a node of an OSMWay
+	 * @param i
+	 * 			Position of the node in the OSMWay
+	 * @return
+	 * 			The index of the node in the node table
+	 */
+	int nodeIndex(int i){ return nodeIndices[i]; }
+	
+	/**
+	 * Gives the identification number of a node of an OSMWay, without creating the OSMNode
+	 * @param i
+	 * 			Position of the node in the OSMWay
+	 * @return
+	 * 			The identification number of the node
+	 */
+	long nodeId(int i){
+		if(nodeTable!=null) return nodeTable.id(nodeIndices[i]);
+		if(nodeStore!=null) return nodeIds[i];
+		return nodes.get(i).id();
+	}
+	
+	/**
+	 * A view of the nodes of an OSMWay stored in a node table, creating the OSMNodes when they're asked for
+	 */
+	private final class TableNodes extends AbstractList<OSMNode> implements RandomAccess{
+		@Override
+		public OSMNode get(int index){ return nodeTable.node(nodeIndices[index]); }
+		
+		@Override
+		public int size(){ return nodeIndices.length; }
+	}
+	
+	/**
+	 * A view of the nodes of an OSMWay stored in a node store, creating the OSMNodes when they're asked for
+	 */
+	private final class StoreNodes extends AbstractList<OSMNode> implements RandomAccess{
+		@Override
+		public OSMNode get(int index){ return nodeStore.node(nodeIds[index]); }
+		
+		@Override
+		public int size(){ return nodeIds.length; }
+	}
+	
 	
 	public static class Builder extends OSMEntity.Builder {
 		
 		private final List<OSMNode> nodes=new ArrayList<OSMNode>();
+		private final OSMNodeTable nodeTable;
+		private int[] nodeIndices;
+		private int nodeIndicesCount;
+		private final OSMNodeStore nodeStore;
+		private long[] nodeIds;
 		
 		/**
 		 * Creates a new builder of an OSMWay using an identification number
@@ -96,6 +210,36 @@ public final class OSMWay extends OSMEntity {
 		 */
 		public Builder(long id){
 			super(id);
+			this.nodeTable = null;
+			this.nodeStore = null;
+		}
+		
+		/**
+		 * Creates a new builder of an OSMWay whose nodes are stored in a node table
+		 * @param id
+		 * 			Identification number of an OSMWay
+		 * @param nodeTable
+		 * 			The table containing the nodes of the OSMWay
+		 */
+		public Builder(long id, OSMNodeTable nodeTable){
+			super(id);
+			this.nodeTable = nodeTable;
+			this.nodeIndices = new int[8];
+			this.nodeStore = null;
+		}
+		
+		/**
+		 * Creates a new builder of an OSMWay whose nodes are stored in a node store
+		 * @param id
+		 * 			Identification number of an OSMWay
+		 * @param nodeStore
+		 * 			The store containing the nodes of the OSMWay
+		 */
+		public Builder(long id, OSMNodeStore nodeStore){
+			super(id);
+			this.nodeTable = null;
+			this.nodeStore = nodeStore;
+			this.nodeIds = new long[8];
 		}
 		
 		/**
@@ -104,9 +248,36 @@ public final class OSMWay extends OSMEntity {
 		 * 			A node that will be added to a list of nodes of an OSMWay
 		 */
 		public void addNode(OSMNode newNode){
+			if(nodeTable!=null || nodeStore!=null) throw new IllegalStateException();
 			nodes.add(newNode);
 		}
 		
+		/**
+		 * Adds a node of the node table to the nodes of an OSMWay
+		 * @param index
+		 * 			Index of the node in the node table
+		 * @throws IllegalStateException
+		 * 			When the builder doesn't use a node table
+		 */
+		public void addNodeIndex(int index) throws IllegalStateException{
+			if(nodeTable==null) throw new IllegalStateException();
+			if(nodeIndicesCount==nodeIndices.length) nodeIndices = Arrays.copyOf(nodeIndices, nodeIndicesCount*2);
+			nodeIndices[nodeIndicesCount++] = index;
+		}
+		
+		/**
+		 * Adds a node of the node store to the nodes of an OSMWay
+		 * @param id
+		 * 			Identification number of the node in the node store
+		 * @throws IllegalStateException
+		 * 			When the builder doesn't use a node store
+		 */
+		public void addNodeId(long id) throws IllegalStateException{
+			if(nodeStore==null) throw new IllegalStateException();
+			if(nodeIndicesCount==nodeIds.length) nodeIds = Arrays.copyOf(nodeIds, nodeIndicesCount*2);
+			nodeIds[nodeIndicesCount++] = id;
+		}
+		
 		/**
 		 * Builds a new OSMWay
 		 * @return
@@ -116,13 +287,15 @@ public final class OSMWay extends OSMEntity {
 		 */
 		public OSMWay build() throws IllegalStateException{
 			if (isIncomplete()) throw new IllegalStateException(); 
+			if(nodeTable!=null) return new OSMWay(super.getId(), nodeTable, Arrays.copyOf(nodeIndices, nodeIndicesCount), super.attributes());
+			if(nodeStore!=null) return new OSMWay(super.getId(), nodeStore, Arrays.copyOf(nodeIds, nodeIndicesCount), super.attributes());
 			return new OSMWay(super.getId(),nodes,super.attributes());
 			
 		}
 		
 		@Override
 		public boolean isIncomplete() {
-			if(nodes.size()<2) return true;
+			if(nodes.size()<2 && nodeIndicesCount<2) return true;
 			return super.isIncomplete();
 			}
 		}
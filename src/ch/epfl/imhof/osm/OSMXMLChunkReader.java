@@ -0,0 +1,199 @@
+package ch.epfl.imhof.osm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Reads an uncompressed OpenStreetMap XML file in parallel. The file is cut into chunks at the
+ * start of a node, a way or a relation, the chunks are tokenized by several threads into
+ * recorders, and the recorders are replayed to the handler in the order of the file, as the
+ * blobs of a PBF file. The handler then receives the same entities as from a single tokenizer
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+final class OSMXMLChunkReader {
+
+	private static final int CHUNK_SIZE = 1 << 23;
+	private static final int WINDOW_SIZE = 1 << 16;
+	private static final byte[][] ENTITIES = { bytes("node"), bytes("way"), bytes("relation") };
+	private static final byte[] CHANGE_ROOT = bytes("<osmChange");
+
+	/**
+	 * Creates a reader of chunks of an OpenStreetMap XML file
+	 */
+	private OSMXMLChunkReader() {}
+
+	/**
+	 * Reads an uncompressed file with a given number of threads, passing the entities to a handler
+	 * in the order of the file. An osmChange file is read by a single tokenizer, as its entities
+	 * depend on the section they're in
+	 * @param fileName
+	 * 			Name of the file
+	 * @param handler
+	 * 			The handler receiving the entities
+	 * @param keptKeys
+	 * 			The keys of the tags passed to the handler, or null to pass all the tags
+	 * @param threads
+	 * 			Number of threads tokenizing the chunks
+	 * @throws IOException
+	 * 			when there are any errors with the input
+	 * @throws SAXException
+	 * 			when the input is not well formed
+	 */
+	static void read(String fileName, OSMHandler handler, Set<String> keptKeys, int threads) throws IOException, SAXException {
+		try(FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)){
+			long size = channel.size();
+			if(isChange(channel)){
+				new OSMXMLTokenizer(new RangeInputStream(channel, 0, size), handler, keptKeys).parse();
+				return;
+			}
+			ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+				Thread thread = new Thread(r, "xml-tokenizer");
+				thread.setDaemon(true);
+				return thread;
+			});
+			/*
+			 * At most twice as many chunks as threads are tokenized ahead of the handler, which bounds the memory used
+			 */
+			Deque<Future<OSMHandlerRecorder>> pending = new ArrayDeque<Future<OSMHandlerRecorder>>();
+			try {
+				long start = 0;
+				while(start<size){
+					long end = entityStart(channel, Math.min(start+CHUNK_SIZE, size), size);
+					InputStream chunk = new RangeInputStream(channel, start, end);
+					pending.add(executor.submit(() -> {
+						OSMHandlerRecorder recorder = new OSMHandlerRecorder();
+						new OSMXMLTokenizer(chunk, recorder, keptKeys).parse();
+						return recorder;
+					}));
+					if(pending.size()>=2*threads) replay(pending.poll(), handler);
+					start = end;
+				}
+				while(!pending.isEmpty()) replay(pending.poll(), handler);
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Waits for a chunk to be tokenized, and passes its entities to the handler
+	 */
+	private static void replay(Future<OSMHandlerRecorder> chunk, OSMHandler handler) throws IOException, SAXException {
+		try {
+			chunk.get().replay(handler);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading the OSM file", e);
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			if(e.getCause() instanceof SAXException) throw (SAXException) e.getCause();
+			throw new IOException("Invalid OSM file", e.getCause());
+		}
+	}
+
+	/**
+	 * Checks whether the root element of a file is an osmChange, looking at its first bytes
+	 */
+	private static boolean isChange(FileChannel channel) throws IOException {
+		ByteBuffer start = ByteBuffer.allocate(1024);
+		channel.read(start, 0);
+		byte[] bytes = start.array();
+		for(int i=0; i+CHANGE_ROOT.length<=start.position(); i++){
+			if(matches(bytes, i, CHANGE_ROOT)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the first start tag of a node, a way or a relation at or after a position.
+	 * A '<' can't appear in the values of attributes, so any such tag is an entity of the file
+	 * @param from
+	 * 			The position from which the tag is searched for
+	 * @param size
+	 * 			The size of the file
+	 * @return
+	 * 			The position of the '<' of the tag, the size of the file if there's none
+	 */
+	private static long entityStart(FileChannel channel, long from, long size) throws IOException {
+		byte[] window = new byte[WINDOW_SIZE];
+		/*
+		 * The windows overlap by the length of the longest tag, so that a tag is never cut
+		 */
+		int overlap = ENTITIES[2].length+2;
+		for(long position=from; position<size; position+=WINDOW_SIZE-overlap){
+			ByteBuffer buffer = ByteBuffer.wrap(window);
+			while(buffer.hasRemaining() && position+buffer.position()<size){
+				if(channel.read(buffer, position+buffer.position())<0) break;
+			}
+			int length = buffer.position();
+			for(int i=0; i<length; i++){
+				if(window[i]!='<') continue;
+				for(byte[] name : ENTITIES){
+					int end = i+1+name.length;
+					if(end<length && matches(window, i+1, name) && (window[end]==' ' || window[end]=='\t' || window[end]=='\n' || window[end]=='\r' || window[end]=='>' || window[end]=='/')) return position+i;
+				}
+			}
+			if(position+length>=size) break;
+		}
+		return size;
+	}
+
+	private static boolean matches(byte[] bytes, int offset, byte[] name){
+		if(offset+name.length>bytes.length) return false;
+		for(int i=0; i<name.length; i++){
+			if(bytes[offset+i]!=name[i]) return false;
+		}
+		return true;
+	}
+
+	private static byte[] bytes(String s){
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * A stream reading a range of a file with positional reads, so that several streams can share a channel
+	 */
+	private static final class RangeInputStream extends InputStream {
+
+		private final FileChannel channel;
+		private long position;
+		private final long end;
+
+		RangeInputStream(FileChannel channel, long start, long end){
+			this.channel = channel;
+			this.position = start;
+			this.end = end;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1)<0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(position>=end) return -1;
+			int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end-position)), position);
+			if(read<0) return -1;
+			position += read;
+			return read;
+		}
+	}
+}
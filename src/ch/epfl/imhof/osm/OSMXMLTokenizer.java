@@ -0,0 +1,518 @@
+package ch.epfl.imhof.osm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+
+import org.xml.sax.SAXException;
+
+import ch.epfl.imhof.osm.OSMRelation.Member.Type;
+
+/**
+ * A tokenizer dedicated to the OpenStreetMap XML format, working directly on the bytes of
+ * the (UTF-8 encoded) input. Identification numbers and coordinates are decoded straight
+ * from the buffer, only the keys, values and roles of the entities are turned into Strings
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+final class OSMXMLTokenizer {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final int ID = 0, LAT = 1, LON = 2, REF = 3, K = 4, V = 5, TYPE = 6, ROLE = 7;
+	private static final int ATTRIBUTES_COUNT = 8;
+
+	private static final byte[] NODE = bytes("node"), WAY = bytes("way"), RELATION = bytes("relation"),
+			ND = bytes("nd"), TAG = bytes("tag"), MEMBER = bytes("member"), TYPE_NAME = bytes("type"), ROLE_NAME = bytes("role"),
+			CREATE = bytes("create"), MODIFY = bytes("modify"), DELETE = bytes("delete");
+
+	/*
+	 * Powers of ten that are exactly representable as doubles, dividing an exact mantissa by one
+	 * of them gives the correctly rounded value, the same as Double.parseDouble
+	 */
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for(int i=1; i<POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1]*10;
+	}
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	private final InputStream input;
+	private final OSMHandler handler;
+	private final String[][] keptKeys;
+	private final byte[][][] keptKeysBytes;
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int position;
+	private int limit;
+	private boolean endOfInput;
+	private boolean deleteSection;
+
+	private final int[] valueStart = new int[ATTRIBUTES_COUNT];
+	private final int[] valueEnd = new int[ATTRIBUTES_COUNT];
+
+	/**
+	 * Creates a tokenizer reading from a given stream
+	 * @param input
+	 * 			The stream containing the OpenStreetMap XML data
+	 * @param handler
+	 * 			The handler receiving the decoded entities
+	 */
+	OSMXMLTokenizer(InputStream input, OSMHandler handler){
+		this(input, handler, null);
+	}
+
+	/**
+	 * Creates a tokenizer reading from a given stream and passing only the tags having given keys
+	 * @param input
+	 * 			The stream containing the OpenStreetMap XML data
+	 * @param handler
+	 * 			The handler receiving the decoded entities
+	 * @param keptKeys
+	 * 			The keys of the tags passed to the handler, or null to pass all the tags
+	 */
+	OSMXMLTokenizer(InputStream input, OSMHandler handler, Set<String> keptKeys){
+		this.input = input;
+		this.handler = handler;
+		if(keptKeys==null){
+			this.keptKeys = null;
+			this.keptKeysBytes = null;
+			return;
+		}
+		/*
+		 * The kept keys are grouped by the length of their encoding, so that a key is compared
+		 * to the bytes of the file only when it has the same length
+		 */
+		int maxLength = 0;
+		for(String key : keptKeys) maxLength = Math.max(maxLength, key.getBytes(StandardCharsets.UTF_8).length);
+		this.keptKeys = new String[maxLength+1][0];
+		this.keptKeysBytes = new byte[maxLength+1][0][];
+		for(String key : keptKeys){
+			byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+			int count = this.keptKeys[bytes.length].length;
+			this.keptKeys[bytes.length] = Arrays.copyOf(this.keptKeys[bytes.length], count+1);
+			this.keptKeysBytes[bytes.length] = Arrays.copyOf(this.keptKeysBytes[bytes.length], count+1);
+			this.keptKeys[bytes.length][count] = key;
+			this.keptKeysBytes[bytes.length][count] = bytes;
+		}
+	}
+
+	/**
+	 * Reads the whole input and passes the entities to the handler
+	 * @throws IOException
+	 * 			when there are any errors with the input
+	 * @throws SAXException
+	 * 			when the input is not well formed
+	 */
+	void parse() throws IOException, SAXException {
+		while(skipToMarkup()){
+			int end = markupEnd();
+			if(end<0) throw new SAXException("Unexpected end of the OSM file");
+			if(buffer[position+1]!='?' && buffer[position+1]!='!') element(position+end);
+			position += end+1;
+		}
+	}
+
+	/**
+	 * Moves the position to the next '<', reading more input if needed
+	 * @return
+	 * 			False when the end of the input was reached, true otherwise
+	 */
+	private boolean skipToMarkup() throws IOException {
+		while(true){
+			for(int i=position; i<limit; i++){
+				if(buffer[i]=='<'){
+					position = i;
+					return true;
+				}
+			}
+			position = limit;
+			if(!fill()) return false;
+		}
+	}
+
+	/**
+	 * Finds the end of the markup starting at the current position, reading more input if needed
+	 * @return
+	 * 			The offset of the closing '>' relative to the current position, -1 if the input ends before it
+	 */
+	private int markupEnd() throws IOException {
+		int offset = 1;
+		if(!ensure(2)) return -1;
+		if(buffer[position+1]=='!' && ensure(4) && buffer[position+2]=='-' && buffer[position+3]=='-'){
+			for(offset=4; ; offset++){
+				if(!ensure(offset+1)) return -1;
+				if(buffer[position+offset]=='>' && buffer[position+offset-1]=='-' && buffer[position+offset-2]=='-' && offset>=6) return offset;
+			}
+		}
+		byte quote = 0;
+		for(; ; offset++){
+			if(!ensure(offset+1)) return -1;
+			byte b = buffer[position+offset];
+			if(quote!=0){
+				if(b==quote) quote = 0;
+			} else if(b=='"' || b=='\''){
+				quote = b;
+			} else if(b=='>'){
+				return offset;
+			}
+		}
+	}
+
+	/**
+	 * Makes sure that at least a given number of bytes are available from the current position
+	 * @param length
+	 * 			The number of bytes needed
+	 * @return
+	 * 			False if the input ends before, true otherwise
+	 */
+	private boolean ensure(int length) throws IOException {
+		while(limit-position<length){
+			if(!fill()) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads more input, moving the bytes from the current position to the start of the buffer
+	 * and growing it when it's already full
+	 * @return
+	 * 			False when the end of the input was reached, true otherwise
+	 */
+	private boolean fill() throws IOException {
+		if(endOfInput) return false;
+		if(position>0){
+			System.arraycopy(buffer, position, buffer, 0, limit-position);
+			limit -= position;
+			position = 0;
+		}
+		if(limit==buffer.length) buffer = Arrays.copyOf(buffer, buffer.length*2);
+		int read = input.read(buffer, limit, buffer.length-limit);
+		if(read<0){
+			endOfInput = true;
+			return false;
+		}
+		limit += read;
+		return true;
+	}
+
+	/**
+	 * Decodes the element between the current position and a given end
+	 * @param end
+	 * 			Index of the closing '>' of the element
+	 */
+	private void element(int end) throws SAXException {
+		int nameStart = position+1;
+		if(buffer[nameStart]=='/'){
+			int nameEnd = nameEnd(nameStart+1, end);
+			if(entityName(nameStart+1, nameEnd)) handler.endEntity();
+			return;
+		}
+		boolean selfClosing = buffer[end-1]=='/';
+		int nameEnd = nameEnd(nameStart, end);
+		readAttributes(nameEnd, selfClosing ? end-1 : end);
+
+		if(matches(nameStart, nameEnd, ND)){
+			handler.nodeReference(parseLong(REF));
+		} else if(matches(nameStart, nameEnd, TAG)){
+			if(keptKeys==null) handler.tag(string(K), string(V));
+			else {
+				String key = keptKey();
+				if(key!=null) handler.tag(key, string(V));
+			}
+		} else if(matches(nameStart, nameEnd, NODE)){
+			if(deleteSection && (valueStart[LON]<0 || valueStart[LAT]<0)) handler.startNode(parseLong(ID), Double.NaN, Double.NaN);
+			else handler.startNode(parseLong(ID), Math.toRadians(parseCoordinate(LON)), Math.toRadians(parseCoordinate(LAT)));
+			if(selfClosing) handler.endEntity();
+		} else if(matches(nameStart, nameEnd, WAY)){
+			handler.startWay(parseLong(ID));
+			if(selfClosing) handler.endEntity();
+		} else if(matches(nameStart, nameEnd, MEMBER)){
+			handler.member(memberType(), parseLong(REF), string(ROLE));
+		} else if(matches(nameStart, nameEnd, RELATION)){
+			handler.startRelation(parseLong(ID));
+			if(selfClosing) handler.endEntity();
+		} else if(matches(nameStart, nameEnd, CREATE)){
+			changeSection(OSMHandler.ChangeAction.CREATE);
+		} else if(matches(nameStart, nameEnd, MODIFY)){
+			changeSection(OSMHandler.ChangeAction.MODIFY);
+		} else if(matches(nameStart, nameEnd, DELETE)){
+			changeSection(OSMHandler.ChangeAction.DELETE);
+		}
+	}
+
+	private void changeSection(OSMHandler.ChangeAction action){
+		deleteSection = action==OSMHandler.ChangeAction.DELETE;
+		handler.startChangeSection(action);
+	}
+
+	/**
+	 * Checks whether a name is the name of an entity (node, way or relation)
+	 */
+	private boolean entityName(int start, int end){
+		return matches(start, end, NODE) || matches(start, end, WAY) || matches(start, end, RELATION);
+	}
+
+	/**
+	 * Gives the end of the name starting at a given index
+	 */
+	private int nameEnd(int start, int end){
+		int i = start;
+		while(i<end && !isWhitespace(buffer[i]) && buffer[i]!='/') i++;
+		return i;
+	}
+
+	/**
+	 * Records the position of the values of the attributes used by the OSM entities
+	 * @param start
+	 * 			Index of the first byte after the name of the element
+	 * @param end
+	 * 			Index of the end of the attributes
+	 */
+	private void readAttributes(int start, int end) throws SAXException {
+		Arrays.fill(valueStart, -1);
+		int i = start;
+		while(true){
+			while(i<end && isWhitespace(buffer[i])) i++;
+			if(i>=end) return;
+			int nameStart = i;
+			while(i<end && buffer[i]!='=' && !isWhitespace(buffer[i])) i++;
+			int nameEnd = i;
+			while(i<end && isWhitespace(buffer[i])) i++;
+			if(i>=end || buffer[i]!='=') throw new SAXException("Malformed attribute in the OSM file");
+			i++;
+			while(i<end && isWhitespace(buffer[i])) i++;
+			if(i>=end || (buffer[i]!='"' && buffer[i]!='\'')) throw new SAXException("Malformed attribute in the OSM file");
+			byte quote = buffer[i++];
+			int start2 = i;
+			while(i<end && buffer[i]!=quote) i++;
+			if(i>=end) throw new SAXException("Malformed attribute in the OSM file");
+			int attribute = attribute(nameStart, nameEnd);
+			if(attribute>=0){
+				valueStart[attribute] = start2;
+				valueEnd[attribute] = i;
+			}
+			i++;
+		}
+	}
+
+	/**
+	 * Identifies the name of an attribute
+	 * @return
+	 * 			The index of the attribute, -1 if it's not used by the reader
+	 */
+	private int attribute(int start, int end){
+		switch(end-start){
+			case 1:
+				if(buffer[start]=='k') return K;
+				if(buffer[start]=='v') return V;
+				return -1;
+			case 2:
+				return buffer[start]=='i' && buffer[start+1]=='d' ? ID : -1;
+			case 3:
+				if(buffer[start]=='r' && buffer[start+1]=='e' && buffer[start+2]=='f') return REF;
+				if(buffer[start]!='l') return -1;
+				if(buffer[start+1]=='a' && buffer[start+2]=='t') return LAT;
+				if(buffer[start+1]=='o' && buffer[start+2]=='n') return LON;
+				return -1;
+			case 4:
+				if(matches(start, end, TYPE_NAME)) return TYPE;
+				if(matches(start, end, ROLE_NAME)) return ROLE;
+				return -1;
+			default:
+				return -1;
+		}
+	}
+
+	/**
+	 * Gives the start of the value of a required attribute
+	 */
+	private int required(int attribute) throws SAXException {
+		if(valueStart[attribute]<0) throw new SAXException("Missing attribute in the OSM file");
+		return valueStart[attribute];
+	}
+
+	/**
+	 * Decodes an integer value of an attribute
+	 */
+	private long parseLong(int attribute) throws SAXException {
+		int i = required(attribute);
+		int end = valueEnd[attribute];
+		boolean negative = i<end && buffer[i]=='-';
+		if(negative) i++;
+		if(i==end) throw new SAXException("Invalid number in the OSM file");
+		long value = 0;
+		for(; i<end; i++){
+			int digit = buffer[i]-'0';
+			if(digit<0 || digit>9) throw new SAXException("Invalid number in the OSM file");
+			value = value*10+digit;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Decodes a coordinate in degrees, giving exactly the same value as Double.parseDouble
+	 */
+	private double parseCoordinate(int attribute) throws SAXException {
+		int start = required(attribute);
+		int end = valueEnd[attribute];
+		int i = start;
+		boolean negative = i<end && buffer[i]=='-';
+		if(negative) i++;
+		long mantissa = 0;
+		int fractionDigits = 0;
+		boolean point = false;
+		boolean digits = false;
+		for(; i<end; i++){
+			byte b = buffer[i];
+			if(b=='.' && !point){
+				point = true;
+			} else if(b>='0' && b<='9'){
+				digits = true;
+				mantissa = mantissa*10+(b-'0');
+				if(point) fractionDigits++;
+				if(mantissa>=MAX_EXACT_MANTISSA || fractionDigits>=POWERS_OF_TEN.length) return slowParseDouble(start, end);
+			} else {
+				return slowParseDouble(start, end);
+			}
+		}
+		if(!digits) throw new SAXException("Invalid coordinate in the OSM file");
+		double value = mantissa/POWERS_OF_TEN[fractionDigits];
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Decodes a number that can't be decoded exactly by parseCoordinate
+	 */
+	private double slowParseDouble(int start, int end) throws SAXException {
+		try {
+			return Double.parseDouble(new String(buffer, start, end-start, StandardCharsets.ISO_8859_1));
+		} catch(NumberFormatException e) {
+			throw new SAXException("Invalid coordinate in the OSM file", e);
+		}
+	}
+
+	/**
+	 * Decodes the type of a member of a relation
+	 */
+	private Type memberType() throws SAXException {
+		int start = required(TYPE);
+		int end = valueEnd[TYPE];
+		if(matches(start, end, WAY)) return Type.WAY;
+		if(matches(start, end, NODE)) return Type.NODE;
+		if(matches(start, end, RELATION)) return Type.RELATION;
+		throw new SAXException("Invalid member type in the OSM file");
+	}
+
+	/**
+	 * Decodes the value of an attribute as a String, applying the XML normalization of
+	 * whitespaces and replacing the references to characters
+	 */
+	private String string(int attribute) throws SAXException {
+		int start = required(attribute);
+		int end = valueEnd[attribute];
+		for(int i=start; i<end; i++){
+			byte b = buffer[i];
+			if(b<0x20 || b=='&') return slowString(start, end);
+		}
+		return new String(buffer, start, end-start, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Gives the key of the current tag if it is one of the kept keys, without decoding the
+	 * keys that aren't kept
+	 * @return
+	 * 			The kept key equal to the key of the tag, or null if the key isn't kept
+	 */
+	private String keptKey() throws SAXException {
+		int start = required(K);
+		int end = valueEnd[K];
+		for(int i=start; i<end; i++){
+			byte b = buffer[i];
+			if(b<0x20 && b>=0 || b=='&'){
+				/*
+				 * A key with references or whitespaces is decoded before being compared
+				 */
+				String key = slowString(start, end);
+				byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+				if(bytes.length>=keptKeys.length) return null;
+				for(String kept : keptKeys[bytes.length]) if(kept.equals(key)) return kept;
+				return null;
+			}
+		}
+		if(end-start>=keptKeys.length) return null;
+		byte[][] candidates = keptKeysBytes[end-start];
+		for(int i=0; i<candidates.length; i++){
+			if(matches(start, end, candidates[i])) return keptKeys[end-start][i];
+		}
+		return null;
+	}
+
+	/**
+	 * Decodes a value containing non ASCII characters, whitespaces or references
+	 */
+	private String slowString(int start, int end) throws SAXException {
+		String raw = new String(buffer, start, end-start, StandardCharsets.UTF_8);
+		StringBuilder decoded = new StringBuilder(raw.length());
+		for(int i=0; i<raw.length(); i++){
+			char c = raw.charAt(i);
+			if(c=='\r'){
+				if(i+1<raw.length() && raw.charAt(i+1)=='\n') i++;
+				decoded.append(' ');
+			} else if(c=='\n' || c=='\t'){
+				decoded.append(' ');
+			} else if(c=='&'){
+				int semicolon = raw.indexOf(';', i);
+				if(semicolon<0) throw new SAXException("Invalid reference in the OSM file");
+				decoded.append(reference(raw.substring(i+1, semicolon)));
+				i = semicolon;
+			} else {
+				decoded.append(c);
+			}
+		}
+		return decoded.toString();
+	}
+
+	/**
+	 * Gives the characters a reference stands for
+	 * @param name
+	 * 			The reference, without the '&' and ';'
+	 */
+	private static String reference(String name) throws SAXException {
+		switch(name){
+			case "lt": return "<";
+			case "gt": return ">";
+			case "amp": return "&";
+			case "quot": return "\"";
+			case "apos": return "'";
+		}
+		try {
+			if(name.startsWith("#x")) return new String(Character.toChars(Integer.parseInt(name.substring(2), 16)));
+			if(name.startsWith("#")) return new String(Character.toChars(Integer.parseInt(name.substring(1))));
+		} catch(IllegalArgumentException e) {
+			throw new SAXException("Invalid reference in the OSM file", e);
+		}
+		throw new SAXException("Unknown reference in the OSM file: "+name);
+	}
+
+	/**
+	 * Checks whether the bytes between start and end are the ones of a given name
+	 */
+	private boolean matches(int start, int end, byte[] name){
+		if(end-start!=name.length) return false;
+		for(int i=0; i<name.length; i++){
+			if(buffer[start+i]!=name[i]) return false;
+		}
+		return true;
+	}
+
+	private static boolean isWhitespace(byte b){
+		return b==' ' || b=='\n' || b=='\t' || b=='\r';
+	}
+
+	private static byte[] bytes(String name){
+		return name.getBytes(StandardCharsets.US_ASCII);
+	}
+}
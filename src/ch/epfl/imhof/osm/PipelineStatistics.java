@@ -0,0 +1,103 @@
+package ch.epfl.imhof.osm;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of a pipelined decompression of an OpenStreetMap file, filled while the file is
+ * read and consulted afterwards to tune the size and the number of the buffers
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+public final class PipelineStatistics {
+
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong buffers = new AtomicLong();
+	private final AtomicLong producerStalls = new AtomicLong();
+	private final AtomicLong producerStallNanos = new AtomicLong();
+	private final AtomicLong consumerStalls = new AtomicLong();
+	private final AtomicLong consumerStallNanos = new AtomicLong();
+	private final AtomicLong elapsedNanos = new AtomicLong();
+
+	/**
+	 * Gives the number of uncompressed bytes produced
+	 * @return
+	 * 			The number of uncompressed bytes
+	 */
+	public long bytes(){ return bytes.get(); }
+
+	/**
+	 * Gives the number of buffers filled by the decompressing thread
+	 * @return
+	 * 			The number of buffers filled
+	 */
+	public long buffers(){ return buffers.get(); }
+
+	/**
+	 * Gives the number of times the decompressing thread waited for the parser to free a buffer
+	 * @return
+	 * 			The number of stalls of the decompressing thread
+	 */
+	public long producerStalls(){ return producerStalls.get(); }
+
+	/**
+	 * Gives the time the decompressing thread waited for the parser to free a buffer
+	 * @return
+	 * 			The waiting time of the decompressing thread, in nanoseconds
+	 */
+	public long producerStallNanos(){ return producerStallNanos.get(); }
+
+	/**
+	 * Gives the number of times the parser waited for the decompressing thread to fill a buffer
+	 * @return
+	 * 			The number of stalls of the parser
+	 */
+	public long consumerStalls(){ return consumerStalls.get(); }
+
+	/**
+	 * Gives the time the parser waited for the decompressing thread to fill a buffer
+	 * @return
+	 * 			The waiting time of the parser, in nanoseconds
+	 */
+	public long consumerStallNanos(){ return consumerStallNanos.get(); }
+
+	/**
+	 * Gives the time between the start of the decompression and the end of the input
+	 * @return
+	 * 			The elapsed time, in nanoseconds
+	 */
+	public long elapsedNanos(){ return elapsedNanos.get(); }
+
+	/**
+	 * Gives the throughput of the pipeline
+	 * @return
+	 * 			The number of uncompressed megabytes per second, 0 before the end of the input
+	 */
+	public double throughput(){
+		long nanos = elapsedNanos.get();
+		return nanos==0 ? 0 : bytes.get()/1e6/(nanos/1e9);
+	}
+
+	@Override
+	public String toString(){
+		return String.format("%d bytes in %d buffers, %.1f MB/s, producer stalled %d times (%d ms), consumer stalled %d times (%d ms)",
+				bytes(), buffers(), throughput(), producerStalls(), producerStallNanos()/1000000, consumerStalls(), consumerStallNanos()/1000000);
+	}
+
+	void addBuffer(int length){
+		bytes.addAndGet(length);
+		buffers.incrementAndGet();
+	}
+
+	void addProducerStall(long nanos){
+		producerStalls.incrementAndGet();
+		producerStallNanos.addAndGet(nanos);
+	}
+
+	void addConsumerStall(long nanos){
+		consumerStalls.incrementAndGet();
+		consumerStallNanos.addAndGet(nanos);
+	}
+
+	void setElapsedNanos(long nanos){ elapsedNanos.set(nanos); }
+}
@@ -0,0 +1,174 @@
+package ch.epfl.imhof.osm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An input stream decompressing a GZIP input on a separate thread. The decompressing thread
+ * fills a fixed ring of buffers that the reader of the stream empties, so that inflating and
+ * parsing run on two cores
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+final class PipelinedInflaterInputStream extends InputStream {
+
+	private static final int GZIP_BUFFER_SIZE = 1 << 16;
+	private static final Chunk END = new Chunk(null, 0, null);
+
+	private final InputStream compressed;
+	private final BlockingQueue<byte[]> freeBuffers;
+	private final BlockingQueue<Chunk> filledBuffers;
+	private final PipelineStatistics statistics;
+	private final Thread producer;
+	private final long start = System.nanoTime();
+	private Chunk current;
+	private int position;
+	private boolean closed;
+	private IOException error;
+
+	/**
+	 * Creates a stream decompressing a given input
+	 * @param compressed
+	 * 			The GZIP input
+	 * @param bufferSize
+	 * 			Size of each buffer of the ring, in bytes
+	 * @param bufferCount
+	 * 			Number of buffers of the ring
+	 * @param statistics
+	 * 			The statistics filled while the stream is read
+	 * @throws IllegalArgumentException
+	 * 			when the size or the number of buffers are not strictly positive
+	 */
+	PipelinedInflaterInputStream(InputStream compressed, int bufferSize, int bufferCount, PipelineStatistics statistics) throws IllegalArgumentException{
+		if(bufferSize<=0 || bufferCount<=0) throw new IllegalArgumentException();
+		this.compressed = compressed;
+		this.statistics = statistics;
+		this.freeBuffers = new ArrayBlockingQueue<byte[]>(bufferCount);
+		this.filledBuffers = new ArrayBlockingQueue<Chunk>(bufferCount+1);
+		for(int i=0; i<bufferCount; i++) freeBuffers.add(new byte[bufferSize]);
+		this.producer = new Thread(this::inflate, "gzip-inflater");
+		producer.setDaemon(true);
+		producer.start();
+	}
+
+	@Override
+	public int read() throws IOException {
+		if(!fill()) return -1;
+		return current.data[position++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len==0) return 0;
+		if(!fill()) return -1;
+		int n = Math.min(len, current.length-position);
+		System.arraycopy(current.data, position, b, off, n);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(closed) return;
+		closed = true;
+		producer.interrupt();
+		compressed.close();
+	}
+
+	/**
+	 * Makes sure that the current buffer has bytes left, waiting for the decompressing thread if needed
+	 * @return
+	 * 			False at the end of the input, true otherwise
+	 */
+	private boolean fill() throws IOException {
+		if(closed) throw new IOException("Stream closed");
+		/*
+		 * The decompressing thread stops after an error, which is thrown again by every later read
+		 */
+		if(error!=null) throw error;
+		while(current==null || position==current.length){
+			if(current==END) return false;
+			if(current!=null && current.data!=null) freeBuffers.add(current.data);
+			current = takeFilled();
+			position = 0;
+			if(current.error!=null){
+				error = current.error;
+				throw error;
+			}
+			if(current==END){
+				statistics.setElapsedNanos(System.nanoTime()-start);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Chunk takeFilled() throws IOException {
+		Chunk chunk = filledBuffers.poll();
+		if(chunk!=null) return chunk;
+		long waitStart = System.nanoTime();
+		try {
+			chunk = filledBuffers.take();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the decompressed input", e);
+		}
+		statistics.addConsumerStall(System.nanoTime()-waitStart);
+		return chunk;
+	}
+
+	/**
+	 * Decompresses the input into the free buffers, run by the decompressing thread. The thread always ends by queuing
+	 * the end of the input or an error, unless the stream is closed, so that the reader never waits for it in vain.
+	 * There's always room for it, the queue of filled buffers being larger than the ring
+	 */
+	private void inflate(){
+		try(InputStream input = new GZIPInputStream(compressed, GZIP_BUFFER_SIZE)){
+			while(true){
+				byte[] buffer = freeBuffers.poll();
+				if(buffer==null){
+					long waitStart = System.nanoTime();
+					buffer = freeBuffers.take();
+					statistics.addProducerStall(System.nanoTime()-waitStart);
+				}
+				int length = 0;
+				int read = 0;
+				while(length<buffer.length && (read = input.read(buffer, length, buffer.length-length))>=0) length += read;
+				if(length>0){
+					statistics.addBuffer(length);
+					filledBuffers.put(new Chunk(buffer, length, null));
+				}
+				if(read<0){
+					filledBuffers.put(END);
+					return;
+				}
+			}
+		} catch(IOException e) {
+			filledBuffers.offer(new Chunk(null, 0, e));
+		} catch(InterruptedException e) {
+			// The stream was closed, the decompression stops
+		} catch(RuntimeException | Error e) {
+			filledBuffers.offer(new Chunk(null, 0, new IOException("Decompression failed", e)));
+			throw e;
+		}
+	}
+
+	/**
+	 * Represents a filled buffer, or an error of the decompressing thread
+	 */
+	private static final class Chunk {
+		private final byte[] data;
+		private final int length;
+		private final IOException error;
+
+		Chunk(byte[] data, int length, IOException error){
+			this.data = data;
+			this.length = length;
+			this.error = error;
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package ch.epfl.imhof.osm;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.projection.Projection;
+
+/**
+ * The projected coordinates of the nodes of a group of ways stored in node tables, computed
+ * once per node instead of once per vertex of a way. The coordinates of a table are kept in a
+ * single array, the coordinates x and y of the node of index i being at 2i and 2i+1, the nodes
+ * of the table used by none of the ways not being projected. A table must not change after its
+ * nodes are projected
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+final class ProjectedNodes {
+
+	private final IdentityHashMap<OSMNodeTable, double[]> coordinates = new IdentityHashMap<OSMNodeTable, double[]>();
+
+	/**
+	 * Projects the nodes of given ways
+	 * @param ways
+	 * 			The ways whose nodes are projected, the ways storing their nodes otherwise than in a table being ignored
+	 * @param projection
+	 * 			The projection of the nodes
+	 * @param parallel
+	 * 			Boolean stating if the nodes of a table are projected by the threads of the common fork-join pool
+	 */
+	ProjectedNodes(Collection<OSMWay> ways, Projection projection, boolean parallel){
+		IdentityHashMap<OSMNodeTable, boolean[]> used = new IdentityHashMap<OSMNodeTable, boolean[]>();
+		for(OSMWay way : ways){
+			OSMNodeTable table = way.nodeTable();
+			if(table==null) continue;
+			boolean[] tableUsed = used.get(table);
+			if(tableUsed==null){
+				tableUsed = new boolean[table.size()];
+				used.put(table, tableUsed);
+			}
+			for(int i=0; i<way.nodesCount(); i++) tableUsed[way.nodeIndex(i)] = true;
+		}
+		for(Map.Entry<OSMNodeTable, boolean[]> entry : used.entrySet()){
+			coordinates.put(entry.getKey(), project(entry.getKey(), entry.getValue(), projection, parallel));
+		}
+	}
+
+	/**
+	 * Gives the projected coordinates of the nodes of a table
+	 * @param table
+	 * 			A node table, or null
+	 * @return
+	 * 			The coordinates x and y of the nodes of the table, alternated, or null when the table wasn't projected
+	 */
+	double[] coordinates(OSMNodeTable table){
+		return table==null ? null : coordinates.get(table);
+	}
+
+	private static double[] project(OSMNodeTable table, boolean[] used, Projection projection, boolean parallel){
+		double[] projected = new double[2*table.size()];
+		IntStream indices = IntStream.range(0, table.size());
+		(parallel ? indices.parallel() : indices).filter(i -> used[i]).forEach(i -> {
+			Point point = projection.project(new PointGeo(table.longitude(i), table.latitude(i)));
+			projected[2*i] = point.x();
+			projected[2*i+1] = point.y();
+		});
+		return projected;
+	}
+}
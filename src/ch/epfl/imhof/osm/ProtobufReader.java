@@ -0,0 +1,157 @@
+package ch.epfl.imhof.osm;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A minimal reader of the Protocol Buffers wire format, decoding the fields of a message
+ * stored in a byte array one after the other
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+final class ProtobufReader {
+
+	static final int VARINT = 0, FIXED64 = 1, LENGTH_DELIMITED = 2, FIXED32 = 5;
+
+	private final byte[] data;
+	private int position;
+	private final int limit;
+	private int tag;
+
+	/**
+	 * Creates a reader of the message stored in a part of an array
+	 * @param data
+	 * 			The array containing the message
+	 * @param offset
+	 * 			Index of the first byte of the message
+	 * @param length
+	 * 			Number of bytes of the message
+	 */
+	ProtobufReader(byte[] data, int offset, int length){
+		this.data = data;
+		this.position = offset;
+		this.limit = offset+length;
+	}
+
+	/**
+	 * Moves to the next field of the message
+	 * @return
+	 * 			False when there are no more fields, true otherwise
+	 * @throws IOException
+	 * 			when the message is malformed
+	 */
+	boolean next() throws IOException {
+		if(position>=limit) return false;
+		tag = (int) readVarint();
+		return true;
+	}
+
+	/**
+	 * Gives the number of the current field
+	 */
+	int field(){ return tag >>> 3; }
+
+	/**
+	 * Gives the wire type of the current field
+	 */
+	int wireType(){ return tag & 7; }
+
+	/**
+	 * Reads an unsigned variable length integer
+	 */
+	long readVarint() throws IOException {
+		long value = 0;
+		for(int shift=0; shift<64; shift+=7){
+			if(position>=limit) throw new IOException("Truncated protocol buffer");
+			byte b = data[position++];
+			value |= (long) (b & 0x7F) << shift;
+			if(b>=0) return value;
+		}
+		throw new IOException("Malformed varint in protocol buffer");
+	}
+
+	/**
+	 * Reads a signed variable length integer, using the zigzag encoding
+	 */
+	long readSignedVarint() throws IOException {
+		long value = readVarint();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Reads a length delimited field as a nested message
+	 */
+	ProtobufReader readMessage() throws IOException {
+		int length = readLength();
+		ProtobufReader message = new ProtobufReader(data, position, length);
+		position += length;
+		return message;
+	}
+
+	/**
+	 * Reads a length delimited field as an UTF-8 String
+	 */
+	String readString() throws IOException {
+		int length = readLength();
+		String value = new String(data, position, length, StandardCharsets.UTF_8);
+		position += length;
+		return value;
+	}
+
+	/**
+	 * Reads a length delimited field as an array of bytes
+	 */
+	byte[] readBytes() throws IOException {
+		int length = readLength();
+		byte[] value = new byte[length];
+		System.arraycopy(data, position, value, 0, length);
+		position += length;
+		return value;
+	}
+
+	/**
+	 * Reads the length of a length delimited field, leaving the position at its first byte
+	 * @return
+	 * 			The length of the field
+	 */
+	private int readLength() throws IOException {
+		long length = readVarint();
+		if(length<0 || length>limit-position) throw new IOException("Truncated protocol buffer");
+		return (int) length;
+	}
+
+	/**
+	 * Skips the value of the current field
+	 */
+	void skip() throws IOException {
+		switch(wireType()){
+			case VARINT: readVarint(); break;
+			case FIXED64: position += 8; break;
+			case LENGTH_DELIMITED:
+				int length = readLength();
+				position += length;
+				break;
+			case FIXED32: position += 4; break;
+			default: throw new IOException("Unsupported wire type in protocol buffer");
+		}
+		if(position>limit) throw new IOException("Truncated protocol buffer");
+	}
+
+	/**
+	 * Reads the values of a repeated integer field, packed or not
+	 * @return
+	 * 			A reader of the values
+	 */
+	ProtobufReader readPacked() throws IOException {
+		if(wireType()==LENGTH_DELIMITED) return readMessage();
+		int start = position;
+		readVarint();
+		return new ProtobufReader(data, start, position-start);
+	}
+
+	/**
+	 * Checks whether there are values left to read
+	 */
+	boolean hasRemaining(){ return position<limit; }
+}
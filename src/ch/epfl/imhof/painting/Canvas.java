@@ -1,5 +1,6 @@
 package ch.epfl.imhof.painting;
 
+import ch.epfl.imhof.geometry.BoundingBox;
 import ch.epfl.imhof.geometry.Polygon;
 import ch.epfl.imhof.geometry.PolyLine;
 /**
@@ -26,4 +27,19 @@ public interface Canvas {
 	 * 			a color to be used for painting the polygon
 	 */
 	public abstract void drawPolygon(Polygon polygon, Color color);
+	/**
+	 * Gives the part of the map seen on canvas
+	 * @return
+	 * 			the extent of canvas, in the coordinates of the map
+	 */
+	public abstract BoundingBox extent();
+	/**
+	 * Gives the part of the map in which what is drawn can be seen on canvas, when it's drawn up to a distance
+	 * from the lines and polygons of the map
+	 * @param margin
+	 * 			the distance from lines and polygons up to which they're drawn, in points (the units of the image)
+	 * @return
+	 * 			the extent of canvas, widened by the margin and by what can still be seen on its border
+	 */
+	public abstract BoundingBox extent(double margin);
 }
@@ -0,0 +1,175 @@
+package ch.epfl.imhof.painting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ch.epfl.imhof.geometry.BoundingBox;
+import ch.epfl.imhof.geometry.PolyLine;
+
+/**
+ * Clips polyLines and rings to a window, so that only the parts of them which can be seen are drawn.
+ * The segments of a polyLine are tested with the Liang-Barsky algorithm, the runs of segments crossing
+ * the window being given as separate pieces. A ring is clipped with the Sutherland-Hodgman algorithm,
+ * to a single ring which can run along the border of the window, and covers the same area inside the window
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+final class Clipper {
+
+	private final double minX, minY, maxX, maxY;
+
+	/**
+	 * Creates a clipper to a given window
+	 * @param window
+	 * 			the window polyLines and rings are clipped to
+	 */
+	Clipper(BoundingBox window){
+		this.minX = window.minX();
+		this.minY = window.minY();
+		this.maxX = window.maxX();
+		this.maxY = window.maxY();
+	}
+
+	/**
+	 * A part of a polyLine made of consecutive segments of it, from a point of the polyLine to another one
+	 */
+	static final class Piece {
+
+		private final int first;
+		private final int segments;
+
+		private Piece(int first, int segments){
+			this.first = first;
+			this.segments = segments;
+		}
+
+		/**
+		 * @return the position in the polyLine of the first point of the piece
+		 */
+		int first(){ return first; }
+
+		/**
+		 * @return the number of segments of the piece, the segment following the last point of a closed polyLine
+		 * 			joining it to its first point
+		 */
+		int segments(){ return segments; }
+	}
+
+	/**
+	 * Clips a polyLine, a closed one being seen as an open one ending with its first point. The segments
+	 * of the polyLine are kept whole, so that the pieces only join points of the polyLine, which are drawn
+	 * exactly as in the whole polyLine
+	 * @param polyLine
+	 * 			the polyLine to be clipped
+	 * @return
+	 * 			the pieces of the polyLine made of the segments having a part inside the window, in the order of the polyLine
+	 */
+	List<Piece> clip(PolyLine polyLine){
+		List<Piece> pieces = new ArrayList<Piece>();
+		int n = polyLine.pointsCount();
+		int segments = polyLine.isClosed() ? n : n-1;
+		int first = -1;
+		for(int s=0; s<segments; s++){
+			boolean visible = intersects(polyLine.x(s), polyLine.y(s), polyLine.x((s+1)%n), polyLine.y((s+1)%n));
+			if(visible && first<0) first = s;
+			if(!visible && first>=0){
+				pieces.add(new Piece(first, s-first));
+				first = -1;
+			}
+		}
+		if(first>=0) pieces.add(new Piece(first, segments-first));
+		return pieces;
+	}
+
+	/**
+	 * Checks whether a segment has a part inside the window, with the Liang-Barsky algorithm: the parameters
+	 * of the points where the segment enters and leaves the window, 0 being its first point and 1 its last one,
+	 * are narrowed side by side
+	 * @return
+	 * 			true when a part of the segment is inside the window, false otherwise
+	 */
+	private boolean intersects(double x0, double y0, double x1, double y1){
+		double dx = x1-x0, dy = y1-y0;
+		double[] p = { -dx, dx, -dy, dy };
+		double[] q = { x0-minX, maxX-x0, y0-minY, maxY-y0 };
+		double t0 = 0, t1 = 1;
+		for(int i=0; i<4; i++){
+			if(p[i]==0){
+				if(q[i]<0) return false;
+			} else {
+				double r = q[i]/p[i];
+				if(p[i]<0){
+					if(r>t1) return false;
+					if(r>t0) t0 = r;
+				} else {
+					if(r<t0) return false;
+					if(r<t1) t1 = r;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Clips a ring with the Sutherland-Hodgman algorithm, against each side of the window in turn
+	 * @param ring
+	 * 			the ring to be clipped
+	 * @return
+	 * 			the coordinates x and y of the points of the clipped ring, alternated, or null when no part
+	 * 			of the ring is inside the window
+	 */
+	double[] clipRing(PolyLine ring){
+		double[] coordinates = ring.coordinates();
+		for(int side=0; side<4 && coordinates.length>0; side++) coordinates = clipRing(coordinates, side);
+		return coordinates.length<6 ? null : coordinates;
+	}
+
+	/**
+	 * Clips a ring given by its coordinates against a side of the window: 0 for its left side,
+	 * 1 for its right side, 2 for its bottom side and 3 for its top side
+	 */
+	private double[] clipRing(double[] coordinates, int side){
+		int n = coordinates.length/2;
+		double[] clipped = new double[16];
+		int count = 0;
+		double px = coordinates[2*n-2], py = coordinates[2*n-1];
+		boolean previousInside = inside(px, py, side);
+		for(int i=0; i<n; i++){
+			double x = coordinates[2*i], y = coordinates[2*i+1];
+			boolean inside = inside(x, y, side);
+			if(count+4>clipped.length) clipped = Arrays.copyOf(clipped, 2*clipped.length);
+			if(inside!=previousInside){
+				/*
+				 * The edge crosses the line of the side, where a point is added
+				 */
+				double bound = side==0 ? minX : side==1 ? maxX : side==2 ? minY : maxY;
+				if(side<2){
+					clipped[count++] = bound;
+					clipped[count++] = py+(bound-px)*(y-py)/(x-px);
+				} else {
+					clipped[count++] = px+(bound-py)*(x-px)/(y-py);
+					clipped[count++] = bound;
+				}
+			}
+			if(inside){
+				clipped[count++] = x;
+				clipped[count++] = y;
+			}
+			px = x;
+			py = y;
+			previousInside = inside;
+		}
+		return Arrays.copyOf(clipped, count);
+	}
+
+	private boolean inside(double x, double y, int side){
+		switch(side){
+			case 0 : return x>=minX;
+			case 1 : return x<=maxX;
+			case 2 : return y>=minY;
+			default : return y<=maxY;
+		}
+	}
+}
@@ -5,9 +5,9 @@ import java.awt.Graphics2D;
 import java.awt.geom.Area;
 import java.awt.geom.Path2D;
 import java.awt.image.BufferedImage;
-import java.util.Iterator;
-import java.util.function.Function;
+import java.util.List;
 
+import ch.epfl.imhof.geometry.BoundingBox;
 import ch.epfl.imhof.geometry.ClosedPolyLine;
 import ch.epfl.imhof.geometry.Point;
 import ch.epfl.imhof.geometry.PolyLine;
@@ -25,7 +25,17 @@ public final class Java2DCanvas implements Canvas {
 	
 	private final BufferedImage bufferedImage;
 	private final Graphics2D graphics;
-	private final Function<Point, Point> transformer;
+	/**
+	 * The affine change from the coordinates of the map to the ones of the image, x' = scaleX*x+offsetX and y' = scaleY*y+offsetY,
+	 * the coefficients of Point.alignedCoordinateChange applied to the packed coordinates without creating Points
+	 */
+	private final double scaleX, offsetX, scaleY, offsetY;
+	private final double pixelSize;
+	/**
+	 * The part of the map seen on canvas, and the size in the coordinates of the map of a unit of the image, a point
+	 */
+	private final BoundingBox extent;
+	private final double pointSize;
 	/**
 	 * Constructs canvas using passed arguments
 	 * @param pointBL
@@ -43,7 +53,14 @@ public final class Java2DCanvas implements Canvas {
 	 */
 	public Java2DCanvas(Point pointBL,Point pointTR, int width, int height, double dpi, Color background){
 		double resolution = dpi/72;
-		this.transformer=Point.alignedCoordinateChange(pointBL, new Point(0, height/resolution), pointTR, new Point(width/resolution,0));
+		Point imageBL = new Point(0, height/resolution), imageTR = new Point(width/resolution,0);
+		this.scaleX = (imageTR.x()-imageBL.x())/(pointTR.x()-pointBL.x());
+		this.scaleY = (imageTR.y()-imageBL.y())/(pointTR.y()-pointBL.y());
+		this.offsetX = imageBL.x() - pointBL.x()*scaleX;
+		this.offsetY = imageBL.y() - pointBL.y()*scaleY;
+		this.pixelSize = (pointTR.x()-pointBL.x())/width;
+		this.pointSize = pixelSize*resolution;
+		this.extent = new BoundingBox(pointBL.x(), pointBL.y(), pointTR.x(), pointTR.y());
 		this.bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
 		graphics = bufferedImage.createGraphics();
 		graphics.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
@@ -55,11 +72,12 @@ public final class Java2DCanvas implements Canvas {
 	@Override
 	public void drawPolyLine(PolyLine polyLine, LineStyle lineStyle) {
 		/*
-		 * Builds the line shape.
+		 * Lines farther from canvas than the reach of their stroke can't be seen
 		 */
+		BoundingBox window = extent(lineStyle.reach());
+		BoundingBox box = polyLine.boundingBox();
+		if(!window.intersects(box)) return;
 		
-		Path2D line = PathDessinateur(polyLine);
-		if(polyLine.isClosed()) line.closePath();
 		/*
 		 * Builds the BasicStoke from lineStyle.
 		 */
@@ -78,34 +96,74 @@ public final class Java2DCanvas implements Canvas {
 		
 		float[] dashingPattern=lineStyle.dashingPattern();
 		if(lineStyle.dashingPattern().length==0) dashingPattern=null;
-		BasicStroke s = new BasicStroke(lineStyle.width(), cap, join, 10.0f, dashingPattern, 0.0f);
+		BasicStroke s = new BasicStroke(lineStyle.width(), cap, join, LineStyle.MITER_LIMIT, dashingPattern, 0.0f);
+		graphics.setColor(lineStyle.color().toAWTColor());
 
 		/*
-		 * Draws the line in graphics
+		 * Draws the line in graphics, whole when it's inside the window, or when all the segments of a closed line cross
+		 * the window, so that its first point is joined as in the whole line
 		 */
-		graphics.setStroke(s);
-		graphics.setColor(lineStyle.color().toAWTColor());
-		graphics.draw(line);
-		
+		List<Clipper.Piece> pieces = window.contains(box) ? null : new Clipper(window).clip(polyLine);
+		int n = polyLine.pointsCount();
+		if(pieces==null || (polyLine.isClosed() && pieces.size()==1 && pieces.get(0).segments()==n)){
+			Path2D line = PathDessinateur(polyLine);
+			if(polyLine.isClosed()) line.closePath();
+			graphics.setStroke(s);
+			graphics.draw(line);
+			return;
+		}
+
+		/*
+		 * Draws only the pieces of the line crossing the window. A dashed piece is drawn on its own, with the phase of
+		 * the dashing pattern at its start in the whole line, as the pattern starts again with each part of a path
+		 */
+		if(dashingPattern==null){
+			Path2D line = new Path2D.Double();
+			int first = 0, last = pieces.size();
+			if(polyLine.isClosed() && pieces.size()>1 && pieces.get(0).first()==0 && pieces.get(last-1).first()+pieces.get(last-1).segments()==n){
+				/*
+				 * The pieces ending and starting at the first point of a closed line are joined there, as in the whole line
+				 */
+				line.append(PathDessinateur(polyLine, pieces.get(last-1).first(), pieces.get(last-1).segments()+pieces.get(0).segments()), false);
+				first++;
+				last--;
+			}
+			for(Clipper.Piece piece : pieces.subList(first, last)) line.append(PathDessinateur(polyLine, piece.first(), piece.segments()), false);
+			graphics.setStroke(s);
+			graphics.draw(line);
+			return;
+		}
+		double patternLength = 0;
+		for(float dash : dashingPattern) patternLength += dash;
+		double length = 0;
+		int point = 0;
+		for(Clipper.Piece piece : pieces){
+			for(; point<piece.first(); point++){
+				length += Math.hypot(scaleX*(polyLine.x(point+1)-polyLine.x(point)), scaleY*(polyLine.y(point+1)-polyLine.y(point)));
+			}
+			graphics.setStroke(new BasicStroke(lineStyle.width(), cap, join, LineStyle.MITER_LIMIT, dashingPattern, (float) (length%patternLength)));
+			graphics.draw(PathDessinateur(polyLine, piece.first(), piece.segments()));
+		}
 	}
 	
 	@Override
 	public void drawPolygon(Polygon polygon, Color color) {
 
 		/*
-		 * Builds the shell area of the Polygon.
+		 * Builds the shell area of the Polygon, clipped to the window around canvas.
 		 */
-		Path2D shellBorder = PathDessinateur(polygon.shell());
-		shellBorder.closePath();
+		BoundingBox window = extent(0);
+		Clipper clipper = new Clipper(window);
+		Path2D shellBorder = ringPath(polygon.shell(), window, clipper);
+		if(shellBorder==null) return;
 		Area polygonArea = new Area(shellBorder);
 
 		/*
-		 * Subtracts to the shell area each hole.
+		 * Subtracts to the shell area each hole, inside the window.
 		 */
 		for(ClosedPolyLine hole : polygon.holes()){
-			Path2D holePath = PathDessinateur(hole);
-			holePath.closePath();
-			polygonArea.subtract(new Area(holePath));
+			Path2D holePath = ringPath(hole, window, clipper);
+			if(holePath!=null) polygonArea.subtract(new Area(holePath));
 			
 		}
 		
@@ -114,6 +172,51 @@ public final class Java2DCanvas implements Canvas {
 		graphics.fill(polygonArea);
 		
 	}
+	/**
+	 * Creates the closed path of a ring, clipped to a window when it's partly outside of it
+	 * @return the path of the part of the ring inside the window, or null when it's outside of the window
+	 */
+	private Path2D ringPath(ClosedPolyLine ring, BoundingBox window, Clipper clipper){
+		BoundingBox box = ring.boundingBox();
+		if(!window.intersects(box)) return null;
+		Path2D path;
+		if(window.contains(box)){
+			path = PathDessinateur(ring);
+		} else {
+			double[] clipped = clipper.clipRing(ring);
+			if(clipped==null) return null;
+			path = PathDessinateur(clipped);
+		}
+		path.closePath();
+		return path;
+	}
+	
+	@Override
+	public BoundingBox extent(){
+		return extent;
+	}
+	
+	/**
+	 * Gives the part of the map in which the lines and polygons drawn up to a margin can be seen, the extent of canvas widened
+	 * by the margin and by a pixel, for the antialiasing
+	 * @param margin
+	 * 		the margin, in the units of the image
+	 * @return the extent of canvas widened by the margin and a pixel
+	 */
+	@Override
+	public BoundingBox extent(double margin){
+		double widening = pixelSize+margin*pointSize;
+		return new BoundingBox(extent.minX()-widening, extent.minY()-widening, extent.maxX()+widening, extent.maxY()+widening);
+	}
+	
+	/**
+	 * Gives the size of a pixel of canvas in the coordinates of the map, which depends on its dpi and its scale
+	 * @return the width of a pixel of canvas, in the units of the map
+	 */
+	public double pixelSize(){
+		return pixelSize;
+	}
+	
 	/**
 	 * Gives the image of canvas
 	 * @return the image of canvas
@@ -131,19 +234,54 @@ public final class Java2DCanvas implements Canvas {
 	 * 		The completed Path2D
 	 */
 	private Path2D PathDessinateur(PolyLine polyline) {
-		Iterator<Point> itPoint = polyline.points().iterator();
-		Point p = transformer.apply(itPoint.next());
-		Path2D line = new Path2D.Double();
-		line.moveTo(p.x(),p.y());
-		while(itPoint.hasNext()) {
-			p = transformer.apply(itPoint.next());
-			line.lineTo(p.x(), p.y());
+		int count = polyline.pointsCount();
+		Path2D line = new Path2D.Double(Path2D.WIND_NON_ZERO, count+1);
+		line.moveTo(scaleX * polyline.x(0) + offsetX, scaleY * polyline.y(0) + offsetY);
+		for(int i=1; i<count; i++) {
+			line.lineTo(scaleX * polyline.x(i) + offsetX, scaleY * polyline.y(i) + offsetY);
 			}
 		return line;
 		
 		
 	}
 	
+	/**
+	 * Creates a Path2D from the coordinates of points in the map
+	 * @param coordinates
+	 * 		the coordinates x and y of the points, alternated
+	 * @return 
+	 * 		The completed Path2D
+	 */
+	private Path2D PathDessinateur(double[] coordinates) {
+		Path2D line = new Path2D.Double(Path2D.WIND_NON_ZERO, coordinates.length/2+1);
+		line.moveTo(scaleX * coordinates[0] + offsetX, scaleY * coordinates[1] + offsetY);
+		for(int i=2; i<coordinates.length; i+=2) {
+			line.lineTo(scaleX * coordinates[i] + offsetX, scaleY * coordinates[i+1] + offsetY);
+		}
+		return line;
+	}
+	
+	/**
+	 * Creates a Path2D from consecutive segments of a polyline
+	 * @param polyline
+	 * 		polyline to be used to design a path
+	 * @param first
+	 * 		position of the first point of the path in the polyline
+	 * @param segments
+	 * 		number of segments of the path, the segment following the last point of a closed polyline joining it to its first point
+	 * @return 
+	 * 		The completed Path2D
+	 */
+	private Path2D PathDessinateur(PolyLine polyline, int first, int segments) {
+		int n = polyline.pointsCount();
+		Path2D line = new Path2D.Double(Path2D.WIND_NON_ZERO, segments+1);
+		line.moveTo(scaleX * polyline.x(first) + offsetX, scaleY * polyline.y(first) + offsetY);
+		for(int i=first+1; i<=first+segments; i++) {
+			line.lineTo(scaleX * polyline.x(i%n) + offsetX, scaleY * polyline.y(i%n) + offsetY);
+		}
+		return line;
+	}
+	
 	
 	
 	
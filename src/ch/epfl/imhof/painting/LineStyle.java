@@ -9,6 +9,11 @@ package ch.epfl.imhof.painting;
 
 public final class LineStyle {
 
+	/**
+	 * The largest ratio between the length of a miter and the half of the width of a line
+	 */
+	static final float MITER_LIMIT = 10.0f;
+
 	private final float width;
 	private final Color color;
 	private final LineCap lineCap;
@@ -92,6 +97,15 @@ public final class LineStyle {
 	public float[] dashingPattern(){
 		return this.dashingPattern;
 	}
+	/**
+	 * Returns the largest distance from a line of this style at which its stroke is drawn, the half of its width,
+	 * farther at the corners of square caps and joins and up to the miter limit for miter joins
+	 * @return 
+	 * 			the reach of a line of this style, in points (the units of the image)
+	 */
+	public double reach(){
+		return width/2*(lineJoin==LineJoin.miter ? MITER_LIMIT : Math.sqrt(2));
+	}
 	/**
 	 * Creates a new line style from the current one, changing only its width
 	 * @param width
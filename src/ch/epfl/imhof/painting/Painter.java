@@ -26,6 +26,27 @@ public interface Painter {
 	 * 			canvas to draw the map on
 	 */
 	public void drawMap(Map map, Java2DCanvas canvas);
+	/**
+	 * Gives a filter accepting at least the polygons this painter draws, looking only at their attributes,
+	 * so that the polygons it rejects don't need to be built. A painter given as a lambda may draw any polygon
+	 * @return
+	 * 			a filter accepting the polygons this painter may draw
+	 */
+	public default Predicate<Attributed<?>> polygonScope(){ return a -> true; }
+	/**
+	 * Gives a filter accepting at least the polyLines this painter draws, looking only at their attributes,
+	 * so that the polyLines it rejects don't need to be built. A painter given as a lambda may draw any polyLine
+	 * @return
+	 * 			a filter accepting the polyLines this painter may draw
+	 */
+	public default Predicate<Attributed<?>> polyLineScope(){ return a -> true; }
+	/**
+	 * Gives the largest distance from the polygons and polyLines of a map at which this painter draws, so that
+	 * the ones farther from canvas aren't given to it. A painter given as a lambda may draw anywhere
+	 * @return
+	 * 			the reach of this painter, in points (the units of the image)
+	 */
+	public default double reach(){ return Double.POSITIVE_INFINITY; }
 	/**
 	 * Draws a polygon with a given color
 	 * @param color 
@@ -34,11 +55,11 @@ public interface Painter {
 	 * 			a polygon drawn with a given color
 	 */
 	public static Painter polygon(Color color){
-		return (m,c) -> {
+		return new ScopedPainter((m,c) -> {
 			for(Attributed<Polygon> polygon : m.polygons()){
 				c.drawPolygon(polygon.value(), color);
 			}
-		};
+		}, a -> true, a -> false, 0);
 	}
 	/**
 	 * Constructs a painter for the map with a given style
@@ -48,11 +69,11 @@ public interface Painter {
 	 * 			a painter with a given style
 	 */
 	public static Painter line(LineStyle style){
-		return (m,c) -> {
+		return new ScopedPainter((m,c) -> {
 			for(Attributed<PolyLine> polyline : m.polyLines()){
 				c.drawPolyLine(polyline.value(), style);
 			}
-		};
+		}, a -> false, a -> true, style.reach());
 	}
 	/**
 	 * Creates a painter for the map with a given style, specified by the arguments
@@ -92,14 +113,14 @@ public interface Painter {
 	 * 			a painter for the map with a given style
 	 */
 	public static Painter outline(LineStyle style){
-		return (m,c) -> {
+		return new ScopedPainter((m,c) -> {
 			for(Attributed<Polygon> polygon : m.polygons()) {
 				c.drawPolyLine(polygon.value().shell(), style);
 				for(ClosedPolyLine hole : polygon.value().holes()){
 					c.drawPolyLine(hole, style);
 				}
 			}
-		};
+		}, a -> true, a -> false, style.reach());
 	}
 	/**
 	 * Creates an outline painter for the map with a given style, specified by the arguments 
@@ -136,42 +157,43 @@ public interface Painter {
 	 * @param filter
 	 * 			filter used by the painter
 	 * @return
-	 * 			a painter for the map, painting only objects specified by the filter
+	 * 			a painter for the map, painting only objects specified by the filter, within the scopes of this painter
 	 */
 	public default Painter when(Predicate<Attributed<?>> filter){
-		return (m,c) -> {
+		return new ScopedPainter((m,c) -> {
 			List<Attributed<Polygon>> polygons = new ArrayList<Attributed<Polygon>>(m.polygons());
 			List<Attributed<PolyLine>> polylines = new ArrayList<Attributed<PolyLine>>(m.polyLines());
 			polygons.removeIf(filter.negate());
 			polylines.removeIf(filter.negate());
 			drawMap(new Map(polylines, polygons), c);
-		};
+		}, polygonScope().and(filter), polyLineScope().and(filter), reach());
 	}
 	/**
 	 * Puts current painter above the one passed as an argument 
 	 * @param painter
 	 * 			painter to be put underneath the current one
 	 * @return
-	 * 			a painter made of two painters, one working under another
+	 * 			a painter made of two painters, one working under another, whose scopes join theirs and whose reach is the largest of theirs
 	 */
 	public default Painter above(Painter painter){
-		return (m,c) -> {
+		return new ScopedPainter((m,c) -> {
 			painter.drawMap(m, c);
 			drawMap(m,c);
-		};
+		}, polygonScope().or(painter.polygonScope()), polyLineScope().or(painter.polyLineScope()), Math.max(reach(), painter.reach()));
 	}
 	/**
 	 * Stacks painters, layer on layer
 	 * @return
-	 * 			a painter made from all the layers of painters combined
+	 * 			a painter made from all the layers of painters combined, whose scopes are the ones of this painter on the layers drawn
 	 */
 	public default Painter layered(){
-		Painter finalPainter = (m,c) -> {};
+		Painter finalPainter = ScopedPainter.EMPTY;
 		for(int i=-5; i<=5 ; i++) {
 			Predicate<Attributed<?>> filter = Filters.onLayer(i);
 			finalPainter = when(filter).above(finalPainter);
 		}
-		return finalPainter;
+		Predicate<Attributed<?>> drawnLayers = a -> Math.abs(a.attributeValue("layer",0))<=5;
+		return new ScopedPainter(finalPainter, polygonScope().and(drawnLayers), polyLineScope().and(drawnLayers), reach());
 	}
 }
 
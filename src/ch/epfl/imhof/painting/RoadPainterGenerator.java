@@ -61,11 +61,11 @@ public final class RoadPainterGenerator {
 		/*
 		 * Initializing painters and filters
 		 */
-		Painter interiorBridge = (m,c) -> {};
-		Painter outlineBridge = (m,c) -> {};
-		Painter interiorNormal = (m,c) -> {};
-		Painter outlineNormal = (m,c) -> {};
-		Painter tunnel = (m,c) -> {};
+		Painter interiorBridge = ScopedPainter.EMPTY;
+		Painter outlineBridge = ScopedPainter.EMPTY;
+		Painter interiorNormal = ScopedPainter.EMPTY;
+		Painter outlineNormal = ScopedPainter.EMPTY;
+		Painter tunnel = ScopedPainter.EMPTY;
 		
 		Predicate<Attributed<?>> filterBridge = Filters.tagged("bridge");
 		Predicate<Attributed<?>> filterTunnel = Filters.tagged("tunnel");
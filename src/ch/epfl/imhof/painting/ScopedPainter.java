@@ -0,0 +1,59 @@
+package ch.epfl.imhof.painting;
+
+import java.util.function.Predicate;
+
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Map;
+
+/**
+ * A painter knowing which polygons and polyLines it may draw, and how far from them it draws, built by the
+ * painters of the interface Painter so that their scopes and reaches combine as they're filtered and stacked.
+ * The polygons and polyLines which can't be seen on canvas are left out of the map before it's drawn
+ *
+ * @author Michal Piotr Pleskowicz (251034)
+ * @author Rafael Ulises Luzius Pizarro Solar (250976)
+ */
+final class ScopedPainter implements Painter {
+
+	/**
+	 * A painter drawing nothing, whose scopes are empty
+	 */
+	static final Painter EMPTY = new ScopedPainter((m,c) -> {}, a -> false, a -> false, 0);
+
+	private final Painter painter;
+	private final Predicate<Attributed<?>> polygonScope;
+	private final Predicate<Attributed<?>> polyLineScope;
+	private final double reach;
+
+	/**
+	 * Creates a painter drawing with another one, and having given scopes
+	 * @param painter
+	 * 			the painter drawing the map
+	 * @param polygonScope
+	 * 			a filter accepting at least the polygons the painter draws
+	 * @param polyLineScope
+	 * 			a filter accepting at least the polyLines the painter draws
+	 * @param reach
+	 * 			the largest distance from the polygons and polyLines at which the painter draws, in points (the units of the image)
+	 */
+	ScopedPainter(Painter painter, Predicate<Attributed<?>> polygonScope, Predicate<Attributed<?>> polyLineScope, double reach){
+		this.painter = painter;
+		this.polygonScope = polygonScope;
+		this.polyLineScope = polyLineScope;
+		this.reach = reach;
+	}
+
+	@Override
+	public void drawMap(Map map, Java2DCanvas canvas){
+		painter.drawMap(Double.isInfinite(reach) ? map : map.within(canvas.extent(reach)), canvas);
+	}
+
+	@Override
+	public Predicate<Attributed<?>> polygonScope(){ return polygonScope; }
+
+	@Override
+	public Predicate<Attributed<?>> polyLineScope(){ return polyLineScope; }
+
+	@Override
+	public double reach(){ return reach; }
+}